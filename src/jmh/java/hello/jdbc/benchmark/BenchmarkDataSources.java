@@ -0,0 +1,91 @@
+package hello.jdbc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.StatementCachingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+
+/**
+ * 벤치마크용 DataSource - 내장 H2(mem) 사용
+ * driverManager : 항상 새로운 커넥션을 획득
+ * hikari : 커넥션 풀링
+ * hikariStatementCache : 커넥션 풀링 + 물리 커넥션별 PreparedStatement 캐시
+ */
+public abstract class BenchmarkDataSources {
+
+    public static final String URL = "jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1";
+
+    public static final String DRIVER_MANAGER = "driverManager";
+    public static final String HIKARI = "hikari";
+    public static final String HIKARI_STATEMENT_CACHE = "hikariStatementCache";
+
+    public static DataSource create(String type) {
+        if (DRIVER_MANAGER.equals(type)) {
+            return new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        }
+        if (HIKARI.equals(type)) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(URL);
+            dataSource.setUsername(USERNAME);
+            dataSource.setPassword(PASSWORD);
+            dataSource.setMaximumPoolSize(10);
+            dataSource.setPoolName("JmhPool");
+            return dataSource;
+        }
+        if (HIKARI_STATEMENT_CACHE.equals(type)) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setDataSource(new StatementCachingDataSource(
+                    new DriverManagerDataSource(URL, USERNAME, PASSWORD), 32));
+            dataSource.setMaximumPoolSize(10);
+            dataSource.setPoolName("JmhCachingPool");
+            return dataSource;
+        }
+        throw new IllegalArgumentException("unknown dataSource type=" + type);
+    }
+
+    public static void initSchema(DataSource dataSource) throws SQLException {
+        execute(dataSource, "drop table member if exists");
+        execute(dataSource, "drop table member_balance_shard if exists");
+        execute(dataSource, "drop table journal_checkpoint if exists");
+        execute(dataSource, "drop table transfer_ledger if exists");
+        execute(dataSource, "create table member (" +
+                "member_id varchar(32), " +
+                "money integer not null default 0, " +
+                "version bigint not null default 0, " +
+                "primary key (member_id))");
+        execute(dataSource, "create table member_balance_shard (" +
+                "member_id varchar(32), " +
+                "shard integer, " +
+                "money integer not null default 0, " +
+                "version bigint not null default 0, " +
+                "primary key (member_id, shard))");
+        execute(dataSource, "create table journal_checkpoint (journal_id bigint primary key)");
+        execute(dataSource, "create table transfer_ledger (" +
+                "tx_id bigint primary key, " +
+                "entry_type varchar(8) not null, " +
+                "voided_tx_id bigint, " +
+                "from_id varchar(32) not null, " +
+                "to_id varchar(32) not null, " +
+                "money integer not null, " +
+                "created_at timestamp not null)");
+    }
+
+    public static void execute(DataSource dataSource, String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    public static void close(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource) {
+            ((HikariDataSource) dataSource).close();
+        }
+    }
+}
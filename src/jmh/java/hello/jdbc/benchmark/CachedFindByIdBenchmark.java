@@ -0,0 +1,72 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.CachedMemberRepositoryV3;
+import hello.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * findById - 캐시 없음 vs 읽기 캐시
+ * keyCount 명 중 무작위 조회, 히트율은 대략 cacheSize / keyCount (trial 종료 시 출력)
+ */
+@State(Scope.Benchmark)
+public class CachedFindByIdBenchmark {
+
+    @Param({BenchmarkDataSources.HIKARI})
+    String dataSourceType;
+
+    @Param({"10000"})
+    int keyCount;
+
+    @Param({"1000", "10000"})
+    int cacheSize;
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 repository;
+    private CachedMemberRepositoryV3 cachedRepository;
+    private String[] memberIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDataSources.create(dataSourceType);
+        BenchmarkDataSources.initSchema(dataSource);
+
+        repository = new MemberRepositoryV3(dataSource);
+        cachedRepository = new CachedMemberRepositoryV3(dataSource, cacheSize, 10, TimeUnit.MINUTES);
+
+        List<Member> members = new ArrayList<>(keyCount);
+        memberIds = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            memberIds[i] = "m" + i;
+            members.add(new Member(memberIds[i], 10000));
+        }
+        repository.saveAll(members);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%ncacheSize=%d hitRatio=%.3f%n", cacheSize, cachedRepository.getHitRatio());
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    private String randomId() {
+        return memberIds[ThreadLocalRandom.current().nextInt(keyCount)];
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return repository.findById(randomId());
+    }
+
+    @Benchmark
+    public Member cachedFindById() throws SQLException {
+        return cachedRepository.findById(randomId());
+    }
+}
@@ -0,0 +1,44 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.connection.ConnectionPool;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+
+/**
+ * 커넥션 획득 + 반납 비용 - DriverManager(기존 DBConnectionUtil) vs ConnectionPool(현재 DBConnectionUtil)
+ * 내장 H2 기준이라 TCP 연결 비용은 빠져 있다. 실제 서버에서는 차이가 더 커진다.
+ */
+@State(Scope.Benchmark)
+public class ConnectionAcquireBenchmark {
+
+    private ConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ConnectionPool(new DriverManagerDataSource(BenchmarkDataSources.URL, USERNAME, PASSWORD),
+                POOL_MIN_IDLE, POOL_MAX_SIZE, POOL_ACQUIRE_TIMEOUT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public void driverManager() throws SQLException {
+        Connection con = DriverManager.getConnection(BenchmarkDataSources.URL, USERNAME, PASSWORD);
+        con.close();
+    }
+
+    @Benchmark
+    public void connectionPool() throws SQLException {
+        Connection con = pool.getConnection();
+        con.close();
+    }
+}
@@ -0,0 +1,73 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.service.GroupCommitTransferService;
+import hello.jdbc.service.MemberServiceV3_3;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * 이체 1건 = 트랜잭션 1개(V3_3) vs 그룹 커밋
+ * 동시 요청이 있어야 묶이므로 8 스레드로 측정한다.
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class GroupCommitBenchmark {
+
+    private static final String FROM_ID = "from";
+    private static final String TO_ID = "to";
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    @Param({"32"})
+    int maxBatchSize;
+
+    @Param({"2"})
+    long maxWaitMillis;
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 memberRepository;
+    private MemberServiceV3_3 serviceV3_3;
+    private GroupCommitTransferService groupCommitService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDataSources.create(BenchmarkDataSources.HIKARI);
+        BenchmarkDataSources.initSchema(dataSource);
+
+        memberRepository = new MemberRepositoryV3(dataSource);
+        memberRepository.save(new Member(FROM_ID, INITIAL_MONEY));
+        memberRepository.save(new Member(TO_ID, INITIAL_MONEY));
+
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        serviceV3_3 = new MemberServiceV3_3(transactionManager, memberRepository);
+        groupCommitService = new GroupCommitTransferService(transactionManager, memberRepository,
+                maxBatchSize, maxWaitMillis, 10_000);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetBalance() throws SQLException {
+        memberRepository.update(FROM_ID, INITIAL_MONEY);
+        memberRepository.update(TO_ID, INITIAL_MONEY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        groupCommitService.close();
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void transactionPerTransfer() throws SQLException {
+        serviceV3_3.accountTransfer(FROM_ID, TO_ID, 1);
+    }
+
+    @Benchmark
+    public void groupCommit() {
+        groupCommitService.accountTransfer(FROM_ID, TO_ID, 1).join();
+    }
+}
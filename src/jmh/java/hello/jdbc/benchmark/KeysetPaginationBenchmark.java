@@ -0,0 +1,79 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OFFSET 페이지 vs 키셋 페이지 - 1 페이지와 10,000 페이지 비교
+ * memberId 를 0 으로 채워 만들어 page 번호로 이전 페이지의 마지막 memberId 를 계산한다.
+ */
+@State(Scope.Benchmark)
+public class KeysetPaginationBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int PAGE_COUNT = 10_000;
+
+    @Param({"1", "10000"})
+    int page;
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 repository;
+    private String lastMemberId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDataSources.create(BenchmarkDataSources.HIKARI);
+        BenchmarkDataSources.initSchema(dataSource);
+        // 다른 벤치마크의 쓰기 비용에 영향을 주지 않도록 여기서만 만든다.
+        BenchmarkDataSources.execute(dataSource, "create index idx_member_money on member(money, member_id)");
+        repository = new MemberRepositoryV3(dataSource);
+
+        List<Member> members = new ArrayList<>(PAGE_SIZE * PAGE_COUNT);
+        for (int i = 1; i <= PAGE_SIZE * PAGE_COUNT; i++) {
+            members.add(new Member(memberId(i), i % 1000));
+        }
+        repository.saveAll(members);
+
+        lastMemberId = page == 1 ? null : memberId((page - 1) * PAGE_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    private static String memberId(int i) {
+        return String.format("m%07d", i);
+    }
+
+    @Benchmark
+    public List<Member> offset() throws SQLException {
+        String sql = "select * from member order by member_id limit ? offset ?";
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(sql)) {
+            pstmt.setInt(1, PAGE_SIZE);
+            pstmt.setInt(2, (page - 1) * PAGE_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                List<Member> members = new ArrayList<>(PAGE_SIZE);
+                while (rs.next()) {
+                    members.add(new Member(rs.getString("member_id"), rs.getInt("money")));
+                }
+                return members;
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Member> keyset() throws SQLException {
+        return repository.findPageAfter(lastMemberId, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,75 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.service.MemberServiceV3_3;
+import hello.jdbc.service.TransferLedger;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.util.FileSystemUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 원장 기록 비용 - V3_3 이체만 vs 이체 + 원장 기록(그룹 커밋 fsync)
+ * 스레드가 많을수록 fsync 한번에 묶이는 append 가 많아진다.
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class LedgerTransferBenchmark {
+
+    private static final int MEMBER_COUNT = 100;
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    @Param({"0", "1"})
+    long maxWaitMillis;
+
+    private DataSource dataSource;
+    private Path ledgerDir;
+    private TransferLedger ledger;
+    private MemberServiceV3_3 service;
+    private MemberServiceV3_3 ledgerService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        dataSource = BenchmarkDataSources.create(BenchmarkDataSources.HIKARI);
+        BenchmarkDataSources.initSchema(dataSource);
+
+        MemberRepositoryV3 memberRepository = new MemberRepositoryV3(dataSource);
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            memberRepository.save(new Member("member" + i, INITIAL_MONEY));
+        }
+
+        ledgerDir = Files.createTempDirectory("ledger");
+        ledger = new TransferLedger(ledgerDir, TransferLedger.DEFAULT_SEGMENT_SIZE, maxWaitMillis);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        service = new MemberServiceV3_3(transactionManager, memberRepository);
+        ledgerService = new MemberServiceV3_3(transactionManager, memberRepository, ledger);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException, IOException {
+        ledger.close();
+        FileSystemUtils.deleteRecursively(ledgerDir);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void transfer() throws SQLException {
+        service.accountTransfer(randomMember(), randomMember(), 1);
+    }
+
+    @Benchmark
+    public void transferWithLedger() throws SQLException {
+        ledgerService.accountTransfer(randomMember(), randomMember(), 1);
+    }
+
+    private static String randomMember() {
+        return "member" + ThreadLocalRandom.current().nextInt(MEMBER_COUNT);
+    }
+}
@@ -0,0 +1,84 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.metrics.SimpleMetricsRegistry;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.service.MemberServiceV3_2;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 낙관적 락 vs 비관적 락 이체
+ * low - 1000 명 중 무작위 두 명, high - 2 명 사이에서만 이체
+ * trial 종료 시 version 충돌/재시도 횟수를 출력한다.
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class LockingTransferBenchmark {
+
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    @Param({"low", "high"})
+    String contention;
+
+    private DataSource dataSource;
+    private MemberServiceV3_2 memberService;
+    private SimpleMetricsRegistry registry;
+    private String[] memberIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDataSources.create(BenchmarkDataSources.HIKARI);
+        BenchmarkDataSources.initSchema(dataSource);
+
+        int memberCount = "high".equals(contention) ? 2 : 1000;
+        memberIds = new String[memberCount];
+        List<Member> members = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            memberIds[i] = "m" + i;
+            members.add(new Member(memberIds[i], INITIAL_MONEY));
+        }
+        MemberRepositoryV3 memberRepository = new MemberRepositoryV3(dataSource);
+        memberRepository.saveAll(members);
+
+        registry = new SimpleMetricsRegistry();
+        memberService = new MemberServiceV3_2(new DataSourceTransactionManager(dataSource), memberRepository, registry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new TreeMap<>(registry.getCounters()).forEach((name, counter) -> {
+            if (name.endsWith(".conflict") || name.endsWith(".retry")) {
+                System.out.printf("%ncontention=%s %s=%d", contention, name, counter.getCount());
+            }
+        });
+        System.out.println();
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    private int[] randomPair() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(memberIds.length);
+        int to = (from + 1 + random.nextInt(memberIds.length - 1)) % memberIds.length;
+        return new int[]{from, to};
+    }
+
+    @Benchmark
+    public void optimistic() throws SQLException {
+        int[] pair = randomPair();
+        memberService.accountTransferOptimistic(memberIds[pair[0]], memberIds[pair[1]], 1);
+    }
+
+    @Benchmark
+    public void pessimistic() throws SQLException {
+        int[] pair = randomPair();
+        memberService.accountTransferPessimistic(memberIds[pair[0]], memberIds[pair[1]], 1);
+    }
+}
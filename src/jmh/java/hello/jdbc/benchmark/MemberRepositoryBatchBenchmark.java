@@ -0,0 +1,91 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * save 반복 vs saveAll(JDBC 배치)
+ * 한번의 호출에 rows 건을 저장하고, 호출마다 테이블을 비운다.
+ */
+@State(Scope.Benchmark)
+public class MemberRepositoryBatchBenchmark {
+
+    @Param({BenchmarkDataSources.DRIVER_MANAGER, BenchmarkDataSources.HIKARI})
+    String dataSourceType;
+
+    @Param({"1000"})
+    int rows;
+
+    @Param({"100", "1000"})
+    int batchSize;
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 repository;
+    private TransactionTemplate txTemplate;
+    private List<Member> members;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDataSources.create(dataSourceType);
+        BenchmarkDataSources.initSchema(dataSource);
+
+        repository = new MemberRepositoryV3(dataSource, batchSize);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        members = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            members.add(new Member("m" + i, 10000));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanUp() throws SQLException {
+        BenchmarkDataSources.execute(dataSource, "delete from member");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    // 현재 방식 - row 마다 커넥션 획득, prepareStatement, auto commit
+    @Benchmark
+    public void loopSave() throws SQLException {
+        for (Member member : members) {
+            repository.save(member);
+        }
+    }
+
+    // 같은 트랜잭션 안에서 save 반복
+    @Benchmark
+    public void loopSaveInTransaction() {
+        txTemplate.executeWithoutResult(status -> {
+            try {
+                for (Member member : members) {
+                    repository.save(member);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public int[] saveAll() {
+        return txTemplate.execute(status -> {
+            try {
+                return repository.saveAll(members);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import hello.jdbc.repository.MemberRepositoryV2;
+import hello.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 리포지토리 계층별 CRUD 비용 비교
+ * V1 - DataSource, V2 - 커넥션 파라미터 전달, V3 - DataSourceUtils 트랜잭션 동기화
+ *
+ * delete 단독 측정은 지울 row 가 필요하므로 saveAndDelete - save 로 계산한다.
+ */
+@State(Scope.Benchmark)
+public class MemberRepositoryBenchmark {
+
+    private static final String MEMBER_ID = "bench";
+
+    @Param({BenchmarkDataSources.DRIVER_MANAGER, BenchmarkDataSources.HIKARI,
+            BenchmarkDataSources.HIKARI_STATEMENT_CACHE})
+    String dataSourceType;
+
+    private DataSource dataSource;
+    private MemberRepositoryV1 repositoryV1;
+    private MemberRepositoryV2 repositoryV2;
+    private MemberRepositoryV3 repositoryV3;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDataSources.create(dataSourceType);
+        BenchmarkDataSources.initSchema(dataSource);
+
+        repositoryV1 = new MemberRepositoryV1(dataSource);
+        repositoryV2 = new MemberRepositoryV2(dataSource);
+        repositoryV3 = new MemberRepositoryV3(dataSource);
+
+        repositoryV3.save(new Member(MEMBER_ID, 10000));
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanUp() throws SQLException {
+        // save 벤치마크에서 쌓인 row 정리
+        BenchmarkDataSources.execute(dataSource, "delete from member where member_id like 's%'");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    private String nextId() {
+        return "s" + sequence.incrementAndGet();
+    }
+
+    // V1
+    @Benchmark
+    public Member v1_save() throws SQLException {
+        return repositoryV1.save(new Member(nextId(), 10000));
+    }
+
+    @Benchmark
+    public Member v1_findById() throws SQLException {
+        return repositoryV1.findById(MEMBER_ID);
+    }
+
+    @Benchmark
+    public void v1_update() throws SQLException {
+        repositoryV1.update(MEMBER_ID, 10000);
+    }
+
+    @Benchmark
+    public void v1_saveAndDelete() throws SQLException {
+        String memberId = nextId();
+        repositoryV1.save(new Member(memberId, 10000));
+        repositoryV1.delete(memberId);
+    }
+
+    // V2 - 커넥션을 직접 획득해서 파라미터로 넘긴다 (MemberServiceV2 방식)
+    @Benchmark
+    public Member v2_findById() throws SQLException {
+        Connection con = dataSource.getConnection();
+        try {
+            return repositoryV2.findById(con, MEMBER_ID);
+        } finally {
+            JdbcUtils.closeConnection(con);
+        }
+    }
+
+    @Benchmark
+    public void v2_update() throws SQLException {
+        Connection con = dataSource.getConnection();
+        try {
+            repositoryV2.update(con, MEMBER_ID, 10000);
+        } finally {
+            JdbcUtils.closeConnection(con);
+        }
+    }
+
+    @Benchmark
+    public Member v2_save() throws SQLException {
+        return repositoryV2.save(new Member(nextId(), 10000));
+    }
+
+    @Benchmark
+    public void v2_saveAndDelete() throws SQLException {
+        String memberId = nextId();
+        repositoryV2.save(new Member(memberId, 10000));
+        repositoryV2.delete(memberId);
+    }
+
+    // V3
+    @Benchmark
+    public Member v3_save() throws SQLException {
+        return repositoryV3.save(new Member(nextId(), 10000));
+    }
+
+    @Benchmark
+    public Member v3_findById() throws SQLException {
+        return repositoryV3.findById(MEMBER_ID);
+    }
+
+    @Benchmark
+    public void v3_update() throws SQLException {
+        repositoryV3.update(MEMBER_ID, 10000);
+    }
+
+    @Benchmark
+    public void v3_saveAndDelete() throws SQLException {
+        String memberId = nextId();
+        repositoryV3.save(new Member(memberId, 10000));
+        repositoryV3.delete(memberId);
+    }
+}
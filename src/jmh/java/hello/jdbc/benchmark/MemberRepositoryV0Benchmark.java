@@ -0,0 +1,52 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV0;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MemberRepositoryV0 - DBConnectionUtil(DriverManager) 사용
+ * V0 는 ConnectionConst.URL 로 고정되어 있으므로 H2 서버(tcp://localhost/~/test)가 떠 있어야 한다.
+ * member 테이블의 member_id 는 varchar(10) 이므로 id 를 짧게 유지한다.
+ */
+@State(Scope.Benchmark)
+public class MemberRepositoryV0Benchmark {
+
+    private static final String MEMBER_ID = "benchV0";
+
+    private MemberRepositoryV0 repository;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        repository = new MemberRepositoryV0();
+        repository.delete(MEMBER_ID);
+        repository.save(new Member(MEMBER_ID, 10000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        repository.delete(MEMBER_ID);
+    }
+
+    @Benchmark
+    public Member v0_findById() throws SQLException {
+        return repository.findById(MEMBER_ID);
+    }
+
+    @Benchmark
+    public void v0_update() throws SQLException {
+        repository.update(MEMBER_ID, 10000);
+    }
+
+    @Benchmark
+    public void v0_saveAndDelete() throws SQLException {
+        String memberId = "b0" + (sequence.incrementAndGet() % 10_000_000);
+        repository.save(new Member(memberId, 10000));
+        repository.delete(memberId);
+    }
+}
@@ -0,0 +1,96 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import hello.jdbc.repository.MemberRepositoryV2;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.service.MemberServiceV1;
+import hello.jdbc.service.MemberServiceV2;
+import hello.jdbc.service.MemberServiceV3_1;
+import hello.jdbc.service.MemberServiceV3_2;
+import hello.jdbc.service.MemberServiceV3_3;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * 트랜잭션 방식별 accountTransfer 비용 비교
+ * V1 - 트랜잭션 없음, V2 - 커넥션 파라미터 전달, V3_1 - 트랜잭션 매니저, V3_2 - 트랜잭션 템플릿
+ * V3_3 - 트랜잭션 템플릿 + 상대값 조건부 update
+ */
+@State(Scope.Benchmark)
+public class MemberServiceBenchmark {
+
+    private static final String FROM_ID = "from";
+    private static final String TO_ID = "to";
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    @Param({BenchmarkDataSources.DRIVER_MANAGER, BenchmarkDataSources.HIKARI})
+    String dataSourceType;
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 memberRepository;
+
+    private MemberServiceV1 serviceV1;
+    private MemberServiceV2 serviceV2;
+    private MemberServiceV3_1 serviceV3_1;
+    private MemberServiceV3_2 serviceV3_2;
+    private MemberServiceV3_3 serviceV3_3;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDataSources.create(dataSourceType);
+        BenchmarkDataSources.initSchema(dataSource);
+
+        memberRepository = new MemberRepositoryV3(dataSource);
+        memberRepository.save(new Member(FROM_ID, INITIAL_MONEY));
+        memberRepository.save(new Member(TO_ID, INITIAL_MONEY));
+
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        serviceV1 = new MemberServiceV1(new MemberRepositoryV1(dataSource));
+        serviceV2 = new MemberServiceV2(dataSource, new MemberRepositoryV2(dataSource));
+        serviceV3_1 = new MemberServiceV3_1(transactionManager, memberRepository);
+        serviceV3_2 = new MemberServiceV3_2(transactionManager, memberRepository);
+        serviceV3_3 = new MemberServiceV3_3(transactionManager, memberRepository);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetBalance() throws SQLException {
+        memberRepository.update(FROM_ID, INITIAL_MONEY);
+        memberRepository.update(TO_ID, INITIAL_MONEY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void v1_accountTransfer() throws SQLException {
+        serviceV1.accountTransfer(FROM_ID, TO_ID, 1);
+    }
+
+    @Benchmark
+    public void v2_accountTransfer() throws SQLException {
+        serviceV2.accountTransfer(FROM_ID, TO_ID, 1);
+    }
+
+    @Benchmark
+    public void v3_1_accountTransfer() throws SQLException {
+        serviceV3_1.accountTransfer(FROM_ID, TO_ID, 1);
+    }
+
+    @Benchmark
+    public void v3_2_accountTransfer() throws SQLException {
+        serviceV3_2.accountTransfer(FROM_ID, TO_ID, 1);
+    }
+
+    @Benchmark
+    public void v3_3_accountTransfer() throws SQLException {
+        serviceV3_3.accountTransfer(FROM_ID, TO_ID, 1);
+    }
+}
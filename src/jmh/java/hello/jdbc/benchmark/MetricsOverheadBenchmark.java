@@ -0,0 +1,71 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.connection.MetricsDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.metrics.LatencyHistogram;
+import hello.jdbc.metrics.SimpleMetricsRegistry;
+import hello.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * 지표 수집 비용 - 같은 풀을 그대로 쓰는 경우와 MetricsDataSource 로 감싼 경우의 findById/update
+ * histogramRecord 는 히스토그램 기록 자체의 비용
+ */
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+
+    private static final String MEMBER_ID = "member";
+
+    private DataSource dataSource;
+    private SimpleMetricsRegistry registry;
+    private MemberRepositoryV3 repository;
+    private MemberRepositoryV3 metricsRepository;
+    private LatencyHistogram histogram;
+    private long value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDataSources.create(BenchmarkDataSources.HIKARI);
+        BenchmarkDataSources.initSchema(dataSource);
+
+        registry = new SimpleMetricsRegistry();
+        repository = new MemberRepositoryV3(dataSource);
+        metricsRepository = new MemberRepositoryV3(new MetricsDataSource(dataSource, registry));
+        histogram = new LatencyHistogram();
+        repository.save(new Member(MEMBER_ID, 10000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        registry.report();
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return repository.findById(MEMBER_ID);
+    }
+
+    @Benchmark
+    public Member findByIdWithMetrics() throws SQLException {
+        return metricsRepository.findById(MEMBER_ID);
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        repository.update(MEMBER_ID, 10000);
+    }
+
+    @Benchmark
+    public void updateWithMetrics() throws SQLException {
+        metricsRepository.update(MEMBER_ID, 10000);
+    }
+
+    @Benchmark
+    public void histogramRecord() {
+        histogram.record(value++ & 0xFFFFF);
+    }
+}
@@ -0,0 +1,92 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.limit.AdaptiveConcurrencyLimiter;
+import hello.jdbc.limit.LimitExceededException;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+/**
+ * 동시 실행 제한 - 커넥션을 빌릴 때 AdaptiveConcurrencyLimiter 허가를 받고 close 할 때 반납한다.
+ * 지연시간은 커넥션을 잡고 있던 시간(트랜잭션이면 트랜잭션 전체)이고, 풀 타임아웃은 혼잡으로 본다.
+ * 짧은 조회와 긴 트랜잭션이 섞여도 limiter 가 평균끼리 비교하므로 limit 이 줄지 않고,
+ * close 하지 않은 커넥션의 허가는 maxHold 가 지나면 회수된다.
+ * limit 을 넘으면 풀에서 기다리지 않고 LimitExceededException - 느려진 DB 앞에 스레드가 쌓이지 않는다.
+ *
+ * 커넥션 풀 위(제한 -> 풀 -> 드라이버)에 둔다.
+ * new MemberRepositoryV3(new ConcurrencyLimitingDataSource(hikariDataSource, new AdaptiveConcurrencyLimiter("jdbc.limit", registry)))
+ */
+public class ConcurrencyLimitingDataSource extends DelegatingDataSource {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitingDataSource(DataSource targetDataSource, AdaptiveConcurrencyLimiter limiter) {
+        super(targetDataSource);
+        this.limiter = limiter;
+    }
+
+    /**
+     * @throws LimitExceededException 동시 실행 수가 limit 이상
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+        try {
+            return wrap(super.getConnection(), permit);
+        } catch (SQLException | RuntimeException e) {
+            release(permit, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+        try {
+            return wrap(super.getConnection(username, password), permit);
+        } catch (SQLException | RuntimeException e) {
+            release(permit, e);
+            throw e;
+        }
+    }
+
+    private static void release(AdaptiveConcurrencyLimiter.Permit permit, Exception e) {
+        if (e instanceof SQLTimeoutException) {
+            permit.dropped();
+        }
+        permit.close();
+    }
+
+    private static Connection wrap(Connection target, AdaptiveConcurrencyLimiter.Permit permit) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConcurrencyLimiting[" + target + "]";
+                case "close":
+                    permit.close(); // 여러 번 호출해도 한번만 반납
+                    break;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+}
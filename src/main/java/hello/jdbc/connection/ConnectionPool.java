@@ -0,0 +1,330 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 간단한 커넥션 풀
+ * - 유휴 커넥션은 lock-free deque 에 보관 (최근 반납한 커넥션부터 재사용)
+ * - maxSize 만큼만 동시에 빌려줄 수 있고, acquireTimeout 안에 못 빌리면 SQLTimeoutException
+ * - 빌려줄 때 isValid 로 검증 (VALIDATION_BYPASS_MILLIS 안에 반납된 커넥션은 isClosed 만 확인), 오래된 유휴 커넥션은 정리하되 유휴 커넥션을 minIdle 개 유지 (생성할 때 미리 채운다)
+ * - 반납할 때 빌려간 쪽이 바꾼 autoCommit / readOnly / 격리 수준을 되돌린다.
+ * connection.close() 는 물리 커넥션을 닫지 않고 풀에 반납한다.
+ */
+@Slf4j
+public class ConnectionPool extends AbstractDataSource {
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+    // 이 시간 안에 쓰던 커넥션은 isValid(DB 왕복) 를 건너뛴다. (HikariCP aliveBypassWindowMs 와 같은 값)
+    static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    private final DataSource physicalDataSource;
+    private final int minIdle;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+
+    private final ConcurrentLinkedDeque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    public ConnectionPool(DataSource physicalDataSource, int minIdle, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("invalid pool size minIdle=" + minIdle + ", maxSize=" + maxSize);
+        }
+        this.physicalDataSource = physicalDataSource;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fillIdle();
+        long period = Math.max(idleTimeoutMillis / 2, 1);
+        evictor.scheduleWithFixedDelay(() -> {
+            evictIdle();
+            fillIdle();
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("connection acquire timeout " + acquireTimeoutMillis + "ms"
+                        + " active=" + getActiveConnections() + " total=" + getTotalConnections());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while acquiring connection", e);
+        }
+
+        try {
+            return borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("username/password is fixed by physical dataSource");
+    }
+
+    /**
+     * permit 을 얻은 뒤 호출 - 유휴 커넥션이 없으면 전체 maxSize 안에서 자리를 먼저 잡고 만든다. (fillIdle 과 같은 방식)
+     */
+    private Connection borrow() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        while (true) {
+            PooledConnection pooled;
+            while ((pooled = idleConnections.pollFirst()) != null) {
+                if (isValid(pooled)) {
+                    return pooled.lend();
+                }
+                destroy(pooled);
+            }
+            int total = totalConnections.get();
+            if (total < maxSize) {
+                if (!totalConnections.compareAndSet(total, total + 1)) {
+                    continue;
+                }
+                try {
+                    PooledConnection created = create();
+                    log.info("create physical connection={} total={}", created.physical, totalConnections.get());
+                    return created.lend();
+                } catch (SQLException | RuntimeException e) {
+                    totalConnections.decrementAndGet();
+                    throw e;
+                }
+            }
+            // fillIdle 이 자리를 잡고 만드는 중 - 곧 유휴 커넥션으로 들어온다.
+            if (System.nanoTime() - deadline > 0) {
+                throw new SQLTimeoutException("connection acquire timeout " + acquireTimeoutMillis + "ms"
+                        + " active=" + getActiveConnections() + " total=" + getTotalConnections());
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = physicalDataSource.getConnection();
+        try {
+            return new PooledConnection(physical);
+        } catch (SQLException | RuntimeException e) {
+            JdbcUtils.closeConnection(physical);
+            throw e;
+        }
+    }
+
+    /**
+     * 유휴 커넥션을 minIdle 개까지 채운다. (전체 maxSize 를 넘지 않게)
+     * 실패하면 로그만 남기고 다음 주기나 getConnection 에서 다시 만든다.
+     */
+    void fillIdle() {
+        while (!closed && idleConnections.size() < minIdle) {
+            int total = totalConnections.get();
+            if (total >= maxSize) {
+                return;
+            }
+            if (!totalConnections.compareAndSet(total, total + 1)) {
+                continue;
+            }
+            try {
+                PooledConnection created = create();
+                log.info("create idle connection={} total={}", created.physical, totalConnections.get());
+                idleConnections.offerLast(created);
+            } catch (SQLException | RuntimeException e) {
+                totalConnections.decrementAndGet();
+                log.info("fill idle connection failed", e);
+                return;
+            }
+        }
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            if (System.currentTimeMillis() - pooled.lastUsedMillis < VALIDATION_BYPASS_MILLIS) {
+                return !pooled.physical.isClosed();
+            }
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            log.info("error", e);
+            return false;
+        }
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        try {
+            if (!pooled.physical.getAutoCommit()) {
+                // 커밋/롤백 없이 반납된 트랜잭션은 롤백하고 auto commit 으로 되돌린다.
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            // 바꾼 적이 있을 때만 되돌린다. (드라이버 호출 줄이기)
+            if (pooled.readOnlyChanged) {
+                pooled.physical.setReadOnly(false);
+                pooled.readOnlyChanged = false;
+            }
+            if (pooled.isolationChanged) {
+                pooled.physical.setTransactionIsolation(pooled.defaultIsolation);
+                pooled.isolationChanged = false;
+            }
+            pooled.lastUsedMillis = System.currentTimeMillis();
+            if (closed) {
+                destroy(pooled);
+            } else {
+                idleConnections.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            log.info("error", e);
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        JdbcUtils.closeConnection(pooled.physical);
+    }
+
+    /**
+     * 가장 오래된 유휴 커넥션부터 idleTimeout 이 지난 것을 정리 (유휴 커넥션 minIdle 개는 남긴다)
+     */
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idleConnections.descendingIterator();
+        while (it.hasNext() && idleConnections.size() > minIdle) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsedMillis < idleTimeoutMillis) {
+                break;
+            }
+            // 동시에 빌려간 경우 제거되지 않는다.
+            if (idleConnections.removeLastOccurrence(pooled)) {
+                log.info("evict idle connection={}", pooled.physical);
+                destroy(pooled);
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getActiveConnections() {
+        return Math.max(getTotalConnections() - getIdleConnections(), 0);
+    }
+
+    private class PooledConnection {
+
+        private final Connection physical;
+        private final int defaultIsolation;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+        // 빌려간 쪽이 바꿨는지 - 빌려준 스레드에서만 바꾸고, 반납(giveBack) 후 다른 스레드가 읽는다.
+        private volatile boolean readOnlyChanged;
+        private volatile boolean isolationChanged;
+
+        PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.defaultIsolation = physical.getTransactionIsolation();
+        }
+
+        Connection lend() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new LentConnectionHandler(this));
+        }
+    }
+
+    /**
+     * 빌려준 커넥션 - close() 하면 풀에 반납, 반납 후에는 사용할 수 없다.
+     */
+    private class LentConnectionHandler implements InvocationHandler {
+
+        private final PooledConnection pooled;
+        private boolean returned;
+
+        LentConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooled.physical + "]";
+                case "isClosed":
+                    return returned;
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack(pooled);
+                    }
+                    return null;
+            }
+            if (returned) {
+                throw new SQLException("connection is closed");
+            }
+            if (method.getName().equals("setReadOnly")) {
+                pooled.readOnlyChanged = true;
+            } else if (method.getName().equals("setTransactionIsolation")) {
+                pooled.isolationChanged = true;
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
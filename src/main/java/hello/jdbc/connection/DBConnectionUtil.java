@@ -1,24 +1,43 @@
 package hello.jdbc.connection;
 
+import hello.jdbc.jfr.ConnectionAcquireEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 import static hello.jdbc.connection.ConnectionConst.*;
 
+/**
+ * 커넥션 풀(ConnectionPool)에서 커넥션 획득
+ * 물리 커넥션은 DriverManager 로 생성하고, 커넥션마다 PreparedStatement 를 캐시한다.
+ * connection.close() 하면 풀에 반납된다.
+ * 커넥션 획득은 JFR 이벤트(hello.jdbc.ConnectionAcquire)로 남는다.
+ */
 @Slf4j
 public class DBConnectionUtil {
 
+    private static final ConnectionPool POOL = new ConnectionPool(
+            new StatementCachingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD), POOL_STATEMENT_CACHE_SIZE),
+            POOL_MIN_IDLE, POOL_MAX_SIZE, POOL_ACQUIRE_TIMEOUT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS);
+
     public static Connection getConnection() {
+        ConnectionAcquireEvent event = ConnectionAcquireEvent.start("DBConnectionUtil");
         try {
 
-            Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
-            log.info("get connection ={}, class={}", connection, connection.getClass());
+            Connection connection = POOL.getConnection();
+            event.success();
+            log.debug("get connection ={}, class={}", connection, connection.getClass());
             return connection;
         } catch (SQLException e) {
             throw new IllegalStateException(e);
+        } finally {
+            event.finish();
         }
     }
+
+    public static ConnectionPool getPool() {
+        return POOL;
+    }
 }
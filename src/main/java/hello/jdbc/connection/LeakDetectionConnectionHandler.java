@@ -0,0 +1,60 @@
+package hello.jdbc.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 커넥션 프록시 - close 할 때 LeakDetectionDataSource 에 반납을 알리고 나머지는 그대로 위임
+ * JDBC 커넥션은 한 스레드에서만 사용하므로 동기화하지 않는다.
+ */
+class LeakDetectionConnectionHandler implements InvocationHandler {
+
+    private final Object target;
+    private final LeakDetectionDataSource dataSource;
+    private final LeakDetectionDataSource.Borrow borrow;
+    private boolean closed;
+
+    LeakDetectionConnectionHandler(Object target, LeakDetectionDataSource dataSource,
+                                   LeakDetectionDataSource.Borrow borrow) {
+        this.target = target;
+        this.dataSource = dataSource;
+        this.borrow = borrow;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "LeakDetection[id=" + borrow.id + " " + target + "]";
+            case "isClosed":
+                if (closed) {
+                    return true;
+                }
+                break;
+            case "close":
+                if (closed) {
+                    return null;
+                }
+                closed = true;
+                try {
+                    return invokeTarget(method, args);
+                } finally {
+                    dataSource.release(borrow);
+                }
+        }
+        return invokeTarget(method, args);
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
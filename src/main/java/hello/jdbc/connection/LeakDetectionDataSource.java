@@ -0,0 +1,222 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.metrics.Counter;
+import hello.jdbc.metrics.MetricsRegistry;
+import hello.jdbc.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 커넥션 누수 진단 - 빌려간 커넥션을 close 할 때까지 추적한다.
+ * - 빌릴 때 스택을 기록하고, leakThreshold 보다 오래 잡고 있으면 빌린 스택과 함께 warn 로그 (커넥션마다 한번)
+ * - 풀이 포화되면 지금 빌려간 곳을 오래된 순으로 로그 (reportInterval 에 한번)
+ *   포화 : 획득 실패(풀이 SQLTimeoutException, Hikari 는 SQLTransientConnectionException) 또는
+ *   빌려간 수가 이미 maxConnections 라서 대기한 획득. 딱 maxConnections 개를 빌린 것만으로는 포화가 아니다.
+ * - jdbc.borrow.wait : getConnection 대기 시간, jdbc.borrow.held : 빌리고 close 할 때까지 시간
+ *   jdbc.borrow.leak / jdbc.borrow.saturation : 누수 의심 / 포화 건수
+ *
+ * 커넥션 풀 위(누수 진단 -> 풀 -> 드라이버)에 둔다. 스택 기록은 빌릴 때마다 수 us 가 들어서 captureStack 으로 끌 수 있다.
+ * new LeakDetectionDataSource(hikariDataSource, 30_000, 10, registry)
+ */
+@Slf4j
+public class LeakDetectionDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    public static final long REPORT_INTERVAL_MILLIS = 10_000;
+
+    private final long leakThresholdNanos;
+    private final int maxConnections;
+    private final boolean captureStack;
+
+    private final Set<Borrow> borrows = ConcurrentHashMap.newKeySet();
+    private final AtomicLong borrowSequence = new AtomicLong();
+    private final AtomicLong lastReportMillis = new AtomicLong();
+    private final Timer waitTimer;
+    private final Timer heldTimer;
+    private final Counter leakCounter;
+    private final Counter saturationCounter;
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong saturationCount = new AtomicLong();
+    private final ScheduledExecutorService checker;
+
+    /**
+     * @param maxConnections 아래 풀의 최대 크기, 0 이면 획득 실패(SQLTimeoutException, SQLTransientConnectionException)로만 포화를 판단
+     */
+    public LeakDetectionDataSource(DataSource targetDataSource, long leakThresholdMillis, int maxConnections,
+                                   MetricsRegistry registry) {
+        this(targetDataSource, leakThresholdMillis, maxConnections, registry, true);
+    }
+
+    public LeakDetectionDataSource(DataSource targetDataSource, long leakThresholdMillis, int maxConnections,
+                                   MetricsRegistry registry, boolean captureStack) {
+        super(targetDataSource);
+        if (leakThresholdMillis < 1 || maxConnections < 0) {
+            throw new IllegalArgumentException("invalid leakThresholdMillis=" + leakThresholdMillis
+                    + " maxConnections=" + maxConnections);
+        }
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis);
+        this.maxConnections = maxConnections;
+        this.captureStack = captureStack;
+        this.waitTimer = registry.timer("jdbc.borrow.wait");
+        this.heldTimer = registry.timer("jdbc.borrow.held");
+        this.leakCounter = registry.counter("jdbc.borrow.leak");
+        this.saturationCounter = registry.counter("jdbc.borrow.saturation");
+
+        this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-leak-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(leakThresholdMillis / 2, 1);
+        checker.scheduleWithFixedDelay(this::checkLeaks, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        int active = borrows.size();
+        try {
+            return track(super.getConnection(), start, active);
+        } catch (SQLTimeoutException | SQLTransientConnectionException e) {
+            saturated("acquire timeout");
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        int active = borrows.size();
+        try {
+            return track(super.getConnection(username, password), start, active);
+        } catch (SQLTimeoutException | SQLTransientConnectionException e) {
+            saturated("acquire timeout");
+            throw e;
+        }
+    }
+
+    /**
+     * @param activeBefore 획득을 시작할 때 빌려간 수 - 이미 maxConnections 였으면 반납을 기다린 획득
+     */
+    private Connection track(Connection target, long start, int activeBefore) {
+        long borrowed = System.nanoTime();
+        waitTimer.record(borrowed - start);
+        Thread thread = Thread.currentThread();
+        Borrow borrow = new Borrow(borrowSequence.incrementAndGet(), thread.getName(), borrowed,
+                captureStack ? new Throwable("connection borrowed by " + thread.getName()) : null);
+        borrows.add(borrow);
+        if (maxConnections > 0 && activeBefore >= maxConnections) {
+            saturated("blocked active=" + activeBefore + " max=" + maxConnections);
+        }
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new LeakDetectionConnectionHandler(target, this, borrow));
+    }
+
+    /**
+     * 커넥션 close - 한 커넥션에 한번만 호출된다.
+     */
+    void release(Borrow borrow) {
+        long held = System.nanoTime() - borrow.borrowedNanos;
+        borrows.remove(borrow);
+        heldTimer.record(held);
+        if (borrow.leakReported) {
+            log.info("leaked connection returned id={} thread={} held={}ms",
+                    borrow.id, borrow.threadName, TimeUnit.NANOSECONDS.toMillis(held));
+        }
+    }
+
+    synchronized void checkLeaks() {
+        long now = System.nanoTime();
+        for (Borrow borrow : borrows) {
+            if (!borrow.leakReported && now - borrow.borrowedNanos >= leakThresholdNanos) {
+                borrow.leakReported = true;
+                leakCount.incrementAndGet();
+                leakCounter.increment();
+                log.warn("connection leak suspected id={} thread={} held={}ms",
+                        borrow.id, borrow.threadName, TimeUnit.NANOSECONDS.toMillis(now - borrow.borrowedNanos),
+                        borrow.stack);
+            }
+        }
+    }
+
+    private void saturated(String reason) {
+        saturationCount.incrementAndGet();
+        saturationCounter.increment();
+        long now = System.currentTimeMillis();
+        long last = lastReportMillis.get();
+        if (now - last < REPORT_INTERVAL_MILLIS || !lastReportMillis.compareAndSet(last, now)) {
+            return;
+        }
+        log.warn("connection pool saturated {} borrowers:\n{}", reason, dumpBorrows());
+    }
+
+    /**
+     * 지금 빌려간 커넥션 - 오래 잡고 있는 순서, 빌린 스택 포함
+     */
+    public String dumpBorrows() {
+        List<Borrow> snapshot = new ArrayList<>(borrows);
+        snapshot.sort(Comparator.comparingLong(borrow -> borrow.borrowedNanos));
+        long now = System.nanoTime();
+        StringBuilder sb = new StringBuilder();
+        for (Borrow borrow : snapshot) {
+            sb.append("id=").append(borrow.id)
+                    .append(" thread=").append(borrow.threadName)
+                    .append(" held=").append(TimeUnit.NANOSECONDS.toMillis(now - borrow.borrowedNanos)).append("ms\n");
+            if (borrow.stack != null) {
+                for (StackTraceElement element : borrow.stack.getStackTrace()) {
+                    sb.append("\tat ").append(element).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    public int getActiveCount() {
+        return borrows.size();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    public long getSaturationCount() {
+        return saturationCount.get();
+    }
+
+    @Override
+    public void close() {
+        checker.shutdownNow();
+    }
+
+    static class Borrow {
+        final long id;
+        final String threadName;
+        final long borrowedNanos;
+        final Throwable stack;
+        volatile boolean leakReported; // checkLeaks 에서만 true 로 바꾼다.
+
+        Borrow(long id, String threadName, long borrowedNanos, Throwable stack) {
+            this.id = id;
+            this.threadName = threadName;
+            this.borrowedNanos = borrowedNanos;
+            this.stack = stack;
+        }
+    }
+}
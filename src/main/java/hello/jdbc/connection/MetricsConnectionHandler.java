@@ -0,0 +1,161 @@
+package hello.jdbc.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+/**
+ * 커넥션 프록시 - 트랜잭션 시간과 PreparedStatement 실행 시간을 기록하고 나머지는 그대로 위임
+ * JDBC 커넥션은 한 스레드에서만 사용하므로 동기화하지 않는다.
+ */
+class MetricsConnectionHandler implements InvocationHandler {
+
+    private final Connection target;
+    private final MetricsDataSource dataSource;
+    private final long acquiredNanos;
+    private long transactionStartNanos; // 0 이면 트랜잭션 없음
+    private Connection proxy;
+    private boolean closed;
+
+    MetricsConnectionHandler(Connection target, MetricsDataSource dataSource, long acquiredNanos) {
+        this.target = target;
+        this.dataSource = dataSource;
+        this.acquiredNanos = acquiredNanos;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        this.proxy = (Connection) proxy;
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Metrics[" + target + "]";
+            case "prepareStatement":
+                return wrap((PreparedStatement) invokeTarget(method, args), (String) args[0]);
+            case "setAutoCommit":
+                invokeTarget(method, args);
+                transactionStartNanos = (Boolean) args[0] ? 0 : System.nanoTime();
+                return null;
+            case "commit":
+                invokeTarget(method, args);
+                endTransaction(true);
+                return null;
+            case "rollback":
+                invokeTarget(method, args);
+                if (args == null) { // rollback(savepoint) 는 트랜잭션 종료가 아니다.
+                    endTransaction(false);
+                }
+                return null;
+            case "close":
+                if (!closed) {
+                    closed = true;
+                    dataSource.getUsageTimer().record(System.nanoTime() - acquiredNanos);
+                }
+                break;
+        }
+        return invokeTarget(method, args);
+    }
+
+    private void endTransaction(boolean commit) {
+        if (transactionStartNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        dataSource.getTransactionTimer().record(now - transactionStartNanos);
+        (commit ? dataSource.getCommitCounter() : dataSource.getRollbackCounter()).increment();
+        // autoCommit 이 false 그대로면 다음 트랜잭션이 바로 시작된다.
+        transactionStartNanos = now;
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private PreparedStatement wrap(PreparedStatement statement, String sql) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new MetricsStatementHandler(statement, dataSource.statementMetrics(sql)));
+    }
+
+    private class MetricsStatementHandler implements InvocationHandler {
+
+        private final PreparedStatement target;
+        private final MetricsDataSource.StatementMetrics metrics;
+
+        MetricsStatementHandler(PreparedStatement target, MetricsDataSource.StatementMetrics metrics) {
+            this.target = target;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Metrics[" + target + "]";
+                case "getConnection":
+                    return MetricsConnectionHandler.this.proxy;
+                case "execute":
+                case "executeQuery":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "executeBatch":
+                    if (args == null) {
+                        return execute(method);
+                    }
+                    break;
+            }
+            return invokeTarget(method, args);
+        }
+
+        private Object execute(Method method) throws Throwable {
+            long start = System.nanoTime();
+            try {
+                Object result = method.invoke(target);
+                countRows(result);
+                return result;
+            } catch (InvocationTargetException e) {
+                metrics.errors.increment();
+                throw e.getTargetException();
+            } finally {
+                metrics.timer.record(System.nanoTime() - start);
+            }
+        }
+
+        private void countRows(Object result) {
+            if (result instanceof Integer) {
+                metrics.rows.increment((Integer) result);
+            } else if (result instanceof Long) {
+                metrics.rows.increment((Long) result);
+            } else if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    if (count > 0) {
+                        metrics.rows.increment(count);
+                    }
+                }
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.metrics.Counter;
+import hello.jdbc.metrics.MetricsRegistry;
+import hello.jdbc.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JDBC 지표 - 커넥션/PreparedStatement 를 프록시로 감싸서 기록한다.
+ * - jdbc.connection.acquire : getConnection 대기 시간
+ * - jdbc.connection.usage : 커넥션을 얻고 close 할 때까지 시간
+ * - jdbc.transaction : setAutoCommit(false) 부터 commit/rollback 까지 시간, jdbc.commit / jdbc.rollback 건수
+ * - jdbc.{select|insert|update|delete|merge}.{table} : sql 종류별 실행 시간, .rows 는 update 건수, .error 는 실패 건수
+ *
+ * 커넥션 풀 위(지표 -> 풀 -> 드라이버)에 두어야 풀 대기 시간이 acquire 에 잡힌다.
+ * new MetricsDataSource(hikariDataSource, registry)
+ */
+@Slf4j
+public class MetricsDataSource extends DelegatingDataSource {
+
+    // sql 종류가 이보다 많으면(동적 sql) 새 sql 은 jdbc.other 로 모은다.
+    private static final int MAX_STATEMENT_METRICS = 1000;
+
+    private final MetricsRegistry registry;
+    private final Timer acquireTimer;
+    private final Timer usageTimer;
+    private final Timer transactionTimer;
+    private final Counter commitCounter;
+    private final Counter rollbackCounter;
+    private final StatementMetrics otherStatement;
+    private final Map<String, StatementMetrics> statementMetrics = new ConcurrentHashMap<>();
+
+    public MetricsDataSource(DataSource targetDataSource, MetricsRegistry registry) {
+        super(targetDataSource);
+        this.registry = registry;
+        this.acquireTimer = registry.timer("jdbc.connection.acquire");
+        this.usageTimer = registry.timer("jdbc.connection.usage");
+        this.transactionTimer = registry.timer("jdbc.transaction");
+        this.commitCounter = registry.counter("jdbc.commit");
+        this.rollbackCounter = registry.counter("jdbc.rollback");
+        this.otherStatement = new StatementMetrics(registry, "jdbc.other");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection con = super.getConnection();
+        long acquired = System.nanoTime();
+        acquireTimer.record(acquired - start);
+        return wrap(con, acquired);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection con = super.getConnection(username, password);
+        long acquired = System.nanoTime();
+        acquireTimer.record(acquired - start);
+        return wrap(con, acquired);
+    }
+
+    private Connection wrap(Connection target, long acquiredNanos) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new MetricsConnectionHandler(target, this, acquiredNanos));
+    }
+
+    StatementMetrics statementMetrics(String sql) {
+        StatementMetrics metrics = statementMetrics.get(sql);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (statementMetrics.size() >= MAX_STATEMENT_METRICS) {
+            return otherStatement;
+        }
+        return statementMetrics.computeIfAbsent(sql, k -> new StatementMetrics(registry, operationName(k)));
+    }
+
+    /**
+     * "select * from member where ..." -> jdbc.select.member
+     */
+    static String operationName(String sql) {
+        String[] tokens = sql.trim().toLowerCase(Locale.ROOT).split("[\\s(,]+");
+        if (tokens.length == 0) {
+            return "jdbc.other";
+        }
+        String verb = tokens[0];
+        String table = null;
+        switch (verb) {
+            case "select":
+            case "delete":
+                table = tokenAfter(tokens, "from");
+                break;
+            case "insert":
+            case "merge":
+                table = tokenAfter(tokens, "into");
+                break;
+            case "update":
+                table = tokens.length > 1 ? tokens[1] : null;
+                break;
+            default:
+                return "jdbc.other";
+        }
+        return table == null ? "jdbc." + verb : "jdbc." + verb + "." + table;
+    }
+
+    private static String tokenAfter(String[] tokens, String keyword) {
+        for (int i = 0; i < tokens.length - 1; i++) {
+            if (tokens[i].equals(keyword)) {
+                return tokens[i + 1];
+            }
+        }
+        return null;
+    }
+
+    Timer getUsageTimer() {
+        return usageTimer;
+    }
+
+    Timer getTransactionTimer() {
+        return transactionTimer;
+    }
+
+    Counter getCommitCounter() {
+        return commitCounter;
+    }
+
+    Counter getRollbackCounter() {
+        return rollbackCounter;
+    }
+
+    static class StatementMetrics {
+        final Timer timer;
+        final Counter rows;
+        final Counter errors;
+
+        StatementMetrics(MetricsRegistry registry, String name) {
+            this.timer = registry.timer(name);
+            this.rows = registry.counter(name + ".rows");
+            this.errors = registry.counter(name + ".error");
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 읽기/쓰기 분리 - 읽기 전용 작업은 replica 로, 나머지는 primary 로 보낸다.
+ * 읽기 전용 여부는 커넥션을 얻는 순간의 힌트(readOnly())로 판단한다.
+ * - 리포지토리의 조회 메서드는 트랜잭션 밖에서 힌트를 걸고 커넥션을 얻는다.
+ * - 읽기 전용 트랜잭션(TransactionTemplate.setReadOnly(true))은 RoutingDataSourceTransactionManager 가 트랜잭션 시작 시 힌트를 건다.
+ * replica 는 round robin 으로 고르고, 커넥션을 얻지 못하면 다음 replica, 모두 실패하면 primary 를 사용한다.
+ *
+ * stickyMillis > 0 이면 primary 에 쓰기를 한 스레드는 그 뒤 stickyMillis 동안 읽기도 primary 로 보낸다.
+ * (복제 지연 동안 자기가 쓴 값을 못 읽는 문제 - read-your-writes)
+ * primary 커넥션을 프록시로 감싸서 쓰기 문장을 실행했거나 쓰기가 있는 트랜잭션을 커밋했을 때만 쓰기로 본다.
+ * primary 에서 조회만 한 것은 sticky 구간을 만들지 않는다.
+ * 스레드별 마지막 쓰기 시각은 sticky 구간이 지난 뒤 그 스레드가 다음 커넥션을 얻을 때 지운다. (풀 스레드에 남지 않게)
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final long stickyNanos;
+    private final ThreadLocal<Long> lastPrimaryNanos = new ThreadLocal<>();
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final AtomicLong primaryCount = new AtomicLong();
+    private final AtomicLong replicaCount = new AtomicLong();
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this(primary, replicas, 0);
+    }
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, long stickyMillis) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.stickyNanos = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+    }
+
+    /**
+     * 읽기 전용 힌트 - 닫으면 이전 값으로 돌아간다.
+     * try (Hint hint = ReadWriteRoutingDataSource.readOnly()) { con = dataSource.getConnection(); }
+     */
+    public static Hint readOnly() {
+        return readOnly(true);
+    }
+
+    public static Hint readOnly(boolean readOnly) {
+        Boolean previous = READ_ONLY.get();
+        READ_ONLY.set(readOnly);
+        return () -> {
+            if (previous == null) {
+                READ_ONLY.remove();
+            } else {
+                READ_ONLY.set(previous);
+            }
+        };
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(null, null);
+    }
+
+    /**
+     * 고른 DataSource 에 사용자/비밀번호를 그대로 넘긴다.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(username, password);
+    }
+
+    private Connection route(String username, String password) throws SQLException {
+        boolean sticky = isSticky();
+        if (Boolean.TRUE.equals(READ_ONLY.get()) && !replicas.isEmpty() && !sticky) {
+            Connection con = getReplicaConnection(username, password);
+            if (con != null) {
+                return con;
+            }
+        }
+        return getPrimaryConnection(username, password);
+    }
+
+    private Connection getPrimaryConnection(String username, String password) throws SQLException {
+        Connection con = connect(primary, username, password);
+        primaryCount.incrementAndGet();
+        if (stickyNanos == 0) {
+            return con;
+        }
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new WriteTrackingConnectionHandler(con, this));
+    }
+
+    private Connection getReplicaConnection(String username, String password) {
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            int index = (start + i) % replicas.size();
+            try {
+                Connection con = connect(replicas.get(index), username, password);
+                replicaCount.incrementAndGet();
+                return con;
+            } catch (SQLException e) {
+                log.warn("replica connection error replica={}, try next", index, e);
+            }
+        }
+        log.warn("all replicas unavailable, route to primary");
+        return null;
+    }
+
+    private static Connection connect(DataSource dataSource, String username, String password) throws SQLException {
+        return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+    }
+
+    /**
+     * primary 에 쓰기 - WriteTrackingConnectionHandler 가 쓰기 문장 실행/커밋 후 호출한다.
+     */
+    void markWrite() {
+        lastPrimaryNanos.set(System.nanoTime());
+    }
+
+    // 구간이 지났으면 ThreadLocal 을 지운다.
+    private boolean isSticky() {
+        if (stickyNanos == 0) {
+            return false;
+        }
+        Long last = lastPrimaryNanos.get();
+        if (last == null) {
+            return false;
+        }
+        if (System.nanoTime() - last < stickyNanos) {
+            return true;
+        }
+        lastPrimaryNanos.remove();
+        return false;
+    }
+
+    public long getPrimaryCount() {
+        return primaryCount.get();
+    }
+
+    public long getReplicaCount() {
+        return replicaCount.get();
+    }
+
+    public interface Hint extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,24 @@
+package hello.jdbc.connection;
+
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.sql.DataSource;
+
+/**
+ * 읽기 전용 트랜잭션을 replica 로 보내는 트랜잭션 매니저
+ * DataSourceTransactionManager 는 커넥션을 얻은 뒤에 readOnly 를 동기화하므로, 커넥션을 얻기 전에 힌트를 건다.
+ */
+public class RoutingDataSourceTransactionManager extends DataSourceTransactionManager {
+
+    public RoutingDataSourceTransactionManager(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        try (ReadWriteRoutingDataSource.Hint hint = ReadWriteRoutingDataSource.readOnly(definition.isReadOnly())) {
+            super.doBegin(transaction, definition);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package hello.jdbc.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 커넥션 프록시 - prepareStatement 에 쿼리 타임아웃을 걸고 실행 시간을 재서 SlowQueryDataSource 에 넘긴다.
+ * JDBC 커넥션은 한 스레드에서만 사용하므로 동기화하지 않는다.
+ */
+class SlowQueryConnectionHandler implements InvocationHandler {
+
+    private final Connection target;
+    private final SlowQueryDataSource dataSource;
+    private Connection proxy;
+
+    SlowQueryConnectionHandler(Connection target, SlowQueryDataSource dataSource) {
+        this.target = target;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        this.proxy = (Connection) proxy;
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "SlowQuery[" + target + "]";
+            case "prepareStatement":
+                return prepareStatement(method, args);
+        }
+        return invokeTarget(target, method, args);
+    }
+
+    private PreparedStatement prepareStatement(Method method, Object[] args) throws Throwable {
+        SlowQueryDataSource.StatementPolicy policy = dataSource.policyOf((String) args[0]);
+        PreparedStatement statement = (PreparedStatement) invokeTarget(target, method, args);
+        if (policy.queryTimeoutSeconds > 0) {
+            statement.setQueryTimeout(policy.queryTimeoutSeconds);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new SlowQueryStatementHandler(statement, policy));
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private class SlowQueryStatementHandler implements InvocationHandler {
+
+        private final PreparedStatement target;
+        private final SlowQueryDataSource.StatementPolicy policy;
+        private final List<Object> parameters = new ArrayList<>();
+
+        SlowQueryStatementHandler(PreparedStatement target, SlowQueryDataSource.StatementPolicy policy) {
+            this.target = target;
+            this.policy = policy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SlowQuery[" + target + "]";
+                case "getConnection":
+                    return SlowQueryConnectionHandler.this.proxy;
+                case "clearParameters":
+                    parameters.clear();
+                    break;
+                case "execute":
+                case "executeQuery":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "executeBatch":
+                    if (args == null) {
+                        return execute(method);
+                    }
+                    break;
+                default:
+                    // setString(1, ..), setInt(2, ..), setNull(3, type) ...
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    }
+            }
+            return invokeTarget(target, method, args);
+        }
+
+        private void bind(int index, Object value) {
+            while (parameters.size() < index) {
+                parameters.add(null);
+            }
+            parameters.set(index - 1, value);
+        }
+
+        private Object execute(Method method) throws Throwable {
+            long start = System.nanoTime();
+            Throwable failure = null;
+            try {
+                return method.invoke(target);
+            } catch (InvocationTargetException e) {
+                failure = e.getTargetException();
+                throw failure;
+            } finally {
+                dataSource.afterExecute(SlowQueryConnectionHandler.this.target, policy, parameters,
+                        System.nanoTime() - start, failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 느린 쿼리 로그 + 쿼리 타임아웃 - 커넥션/PreparedStatement 를 프록시로 감싼다.
+ * - prepareStatement 할 때 sql 별 setQueryTimeout 을 건다. (sql 그대로 -> jdbc.select.member 같은 operation 이름 -> 기본값 순서로 찾는다)
+ *   락 대기나 풀스캔으로 멈춘 쿼리가 풀 커넥션을 계속 잡고 있지 않도록 한다. 0 이면 제한 없음
+ * - 실행 시간이 threshold 이상이거나 타임아웃으로 실패하면 sql, 바인드 파라미터, EXPLAIN 결과를 warn 로그로 남긴다.
+ *   같은 operation 은 logInterval 에 한번만 남기고 그 사이 건수는 다음 로그에 suppressed 로 붙인다. (EXPLAIN 도 로그를 남길 때만 실행)
+ * 배치는 마지막으로 바인드한 파라미터만 남는다.
+ *
+ * 커넥션 풀 위(느린 쿼리 -> 풀 -> 드라이버)에 둔다.
+ * new MemberRepositoryV3(new SlowQueryDataSource(hikariDataSource, 500, 10))
+ */
+@Slf4j
+public class SlowQueryDataSource extends DelegatingDataSource {
+
+    public static final long DEFAULT_LOG_INTERVAL_MILLIS = 10_000;
+    // sql 종류가 이보다 많으면(동적 sql) 정책을 캐시하지 않고 매번 계산한다.
+    private static final int MAX_STATEMENT_POLICIES = 1000;
+
+    private final long thresholdNanos;
+    private final int defaultQueryTimeoutSeconds;
+    private final Map<String, Integer> queryTimeouts;
+    private final long logIntervalMillis;
+
+    private final Map<String, StatementPolicy> policies = new ConcurrentHashMap<>();
+    private final Map<String, LogLimit> logLimits = new ConcurrentHashMap<>();
+    private final LongAdder slowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder loggedCount = new LongAdder();
+
+    /**
+     * @param thresholdMillis 이 시간 이상 걸린 쿼리를 로그로 남긴다.
+     * @param queryTimeoutSeconds 모든 쿼리에 거는 타임아웃, 0 이면 제한 없음
+     */
+    public SlowQueryDataSource(DataSource targetDataSource, long thresholdMillis, int queryTimeoutSeconds) {
+        this(targetDataSource, thresholdMillis, queryTimeoutSeconds, Collections.emptyMap(), DEFAULT_LOG_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param queryTimeouts sql 또는 operation 이름(jdbc.select.member) 별 타임아웃(초)
+     * @param logIntervalMillis 같은 operation 의 느린 쿼리 로그 최소 간격
+     */
+    public SlowQueryDataSource(DataSource targetDataSource, long thresholdMillis, int queryTimeoutSeconds,
+                               Map<String, Integer> queryTimeouts, long logIntervalMillis) {
+        super(targetDataSource);
+        if (thresholdMillis < 0 || queryTimeoutSeconds < 0 || logIntervalMillis < 0) {
+            throw new IllegalArgumentException("negative value thresholdMillis=" + thresholdMillis
+                    + " queryTimeoutSeconds=" + queryTimeoutSeconds + " logIntervalMillis=" + logIntervalMillis);
+        }
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.defaultQueryTimeoutSeconds = queryTimeoutSeconds;
+        this.queryTimeouts = new HashMap<>(queryTimeouts);
+        this.logIntervalMillis = logIntervalMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection target) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new SlowQueryConnectionHandler(target, this));
+    }
+
+    StatementPolicy policyOf(String sql) {
+        StatementPolicy policy = policies.get(sql);
+        if (policy != null) {
+            return policy;
+        }
+        if (policies.size() >= MAX_STATEMENT_POLICIES) {
+            return createPolicy(sql);
+        }
+        return policies.computeIfAbsent(sql, this::createPolicy);
+    }
+
+    private StatementPolicy createPolicy(String sql) {
+        String operation = MetricsDataSource.operationName(sql);
+        Integer timeout = queryTimeouts.get(sql);
+        if (timeout == null) {
+            timeout = queryTimeouts.get(operation);
+        }
+        return new StatementPolicy(sql, operation, timeout == null ? defaultQueryTimeoutSeconds : timeout);
+    }
+
+    /**
+     * 실행이 끝난 뒤 호출 - 느리거나 타임아웃이면 로그
+     * @param con 실제 커넥션 (EXPLAIN 을 같은 커넥션/트랜잭션에서 실행)
+     */
+    void afterExecute(Connection con, StatementPolicy policy, List<Object> parameters, long elapsedNanos, Throwable failure) {
+        boolean timeout = isTimeout(failure);
+        if (timeout) {
+            timeoutCount.increment();
+        }
+        if (elapsedNanos < thresholdNanos && !timeout) {
+            return;
+        }
+        slowCount.increment();
+
+        long suppressed = acquireLog(policy.operation);
+        if (suppressed < 0) {
+            return;
+        }
+        loggedCount.increment();
+        log.warn("slow query {}ms operation={} timeout={} queryTimeout={}s suppressed={} sql={} parameters={} plan={}",
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), policy.operation, timeout, policy.queryTimeoutSeconds,
+                suppressed, policy.sql, parameters, explain(con, policy, parameters));
+    }
+
+    /**
+     * @return 로그를 남겨도 되면 그동안 생략된 건수, 아니면 -1
+     */
+    private long acquireLog(String operation) {
+        LogLimit limit = logLimits.get(operation);
+        if (limit == null) {
+            limit = logLimits.computeIfAbsent(operation, k -> new LogLimit());
+        }
+        long now = System.currentTimeMillis();
+        long last = limit.lastLoggedMillis.get();
+        if (now - last < logIntervalMillis || !limit.lastLoggedMillis.compareAndSet(last, now)) {
+            limit.suppressed.increment();
+            return -1;
+        }
+        return limit.suppressed.sumThenReset();
+    }
+
+    /**
+     * 같은 파라미터로 H2 EXPLAIN 실행 - 실패해도 예외 없이 메시지를 돌려준다.
+     */
+    static String explain(Connection con, StatementPolicy policy, List<Object> parameters) {
+        if (policy.operation.equals("jdbc.other")) {
+            return "-";
+        }
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            pstmt = con.prepareStatement("explain " + policy.sql);
+            for (int i = 0; i < parameters.size(); i++) {
+                pstmt.setObject(i + 1, parameters.get(i));
+            }
+            rs = pstmt.executeQuery();
+            StringBuilder plan = new StringBuilder();
+            while (rs.next()) {
+                plan.append(rs.getString(1));
+            }
+            return plan.toString();
+        } catch (SQLException e) {
+            return "explain failed: " + e.getMessage();
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(pstmt);
+        }
+    }
+
+    // 드라이버에 따라 SQLTimeoutException 대신 일반 SQLException 을 던지므로 sql state 57014(query canceled)도 본다.
+    private static boolean isTimeout(Throwable failure) {
+        return failure instanceof SQLTimeoutException
+                || (failure instanceof SQLException && "57014".equals(((SQLException) failure).getSQLState()));
+    }
+
+    public long getSlowCount() {
+        return slowCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getLoggedCount() {
+        return loggedCount.sum();
+    }
+
+    static class StatementPolicy {
+        final String sql;
+        final String operation;
+        final int queryTimeoutSeconds;
+
+        StatementPolicy(String sql, String operation, int queryTimeoutSeconds) {
+            this.sql = sql;
+            this.operation = operation;
+            this.queryTimeoutSeconds = queryTimeoutSeconds;
+        }
+    }
+
+    private static class LogLimit {
+        final AtomicLong lastLoggedMillis = new AtomicLong();
+        final LongAdder suppressed = new LongAdder();
+    }
+}
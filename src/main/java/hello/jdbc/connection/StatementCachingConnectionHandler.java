@@ -0,0 +1,165 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 커넥션 프록시 - prepareStatement(sql) 만 캐시하고 나머지는 그대로 위임
+ * JDBC 커넥션은 한 스레드에서만 사용하므로 동기화하지 않는다.
+ */
+@Slf4j
+class StatementCachingConnectionHandler implements InvocationHandler {
+
+    private final Connection target;
+    private final StatementCachingDataSource metrics;
+    private final Map<String, PreparedStatement> idleStatements;
+    private Connection proxy;
+    private boolean closed;
+
+    StatementCachingConnectionHandler(Connection target, StatementCachingDataSource metrics) {
+        this.target = target;
+        this.metrics = metrics;
+        int maxStatements = metrics.getMaxStatements();
+        // 반납된(사용 중이 아닌) statement 만 보관, accessOrder = true -> LRU
+        this.idleStatements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > maxStatements) {
+                    metrics.recordEviction();
+                    JdbcUtils.closeStatement(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        this.proxy = (Connection) proxy;
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "StatementCaching[" + target + "]";
+            case "prepareStatement":
+                if (args.length == 1) {
+                    return prepareStatement((String) args[0]);
+                }
+                break;
+            case "close":
+                close();
+                return null;
+        }
+
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private PreparedStatement prepareStatement(String sql) throws Exception {
+        PreparedStatement cached = idleStatements.remove(sql);
+        if (cached != null) {
+            metrics.recordHit();
+            return wrap(cached, sql);
+        }
+        metrics.recordMiss();
+        return wrap(target.prepareStatement(sql), sql);
+    }
+
+    private PreparedStatement wrap(PreparedStatement statement, String sql) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new CachedStatementHandler(statement, sql));
+    }
+
+    /**
+     * statement.close() -> 캐시로 반납
+     */
+    void release(String sql, PreparedStatement statement) {
+        if (closed || idleStatements.containsKey(sql)) {
+            JdbcUtils.closeStatement(statement);
+            return;
+        }
+        try {
+            statement.clearParameters();
+            statement.clearWarnings();
+            // addBatch 후 executeBatch 전에 예외로 빠져나왔으면 쌓인 row 가 다음 사용자의 배치에 섞인다.
+            statement.clearBatch();
+            // 빌려간 쪽이 바꾼 설정이 다음 사용자에게 넘어가지 않도록 기본값으로 되돌린다.
+            statement.setQueryTimeout(0);
+            statement.setFetchSize(0);
+            statement.setMaxRows(0);
+            idleStatements.put(sql, statement);
+        } catch (Exception e) {
+            log.info("error", e);
+            JdbcUtils.closeStatement(statement);
+        }
+    }
+
+    private void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (PreparedStatement statement : idleStatements.values()) {
+            JdbcUtils.closeStatement(statement);
+        }
+        idleStatements.clear();
+        target.close();
+    }
+
+    private class CachedStatementHandler implements InvocationHandler {
+
+        private final PreparedStatement target;
+        private final String sql;
+        private boolean closed;
+
+        CachedStatementHandler(PreparedStatement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + target + "]";
+                case "getConnection":
+                    return StatementCachingConnectionHandler.this.proxy;
+                case "isClosed":
+                    return closed || target.isClosed();
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(sql, target);
+                    }
+                    return null;
+            }
+
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
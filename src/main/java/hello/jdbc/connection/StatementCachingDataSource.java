@@ -0,0 +1,90 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PreparedStatement 캐시 - 물리 커넥션 단위 LRU
+ * 같은 커넥션에서 같은 sql 로 prepareStatement 하면 캐시된 statement 를 돌려준다.
+ * statement.close() 는 실제로 닫지 않고 캐시로 반납, connection.close() 시 캐시된 statement 를 모두 닫는다.
+ *
+ * 커넥션 풀 아래(풀 -> 캐시 -> 드라이버)에 두어야 커넥션이 재사용되면서 캐시 효과가 있다.
+ * HikariDataSource.setDataSource(new StatementCachingDataSource(driverDataSource, 32))
+ */
+@Slf4j
+public class StatementCachingDataSource extends DelegatingDataSource {
+
+    private final int maxStatements;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public StatementCachingDataSource(DataSource targetDataSource, int maxStatements) {
+        super(targetDataSource);
+        if (maxStatements < 1) {
+            throw new IllegalArgumentException("maxStatements must be positive maxStatements=" + maxStatements);
+        }
+        this.maxStatements = maxStatements;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    /**
+     * DataSource 를 거치지 않는 커넥션(DriverManager 등)에 캐시를 붙일 때 사용
+     */
+    public Connection wrap(Connection target) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new StatementCachingConnectionHandler(target, this));
+    }
+
+    int getMaxStatements() {
+        return maxStatements;
+    }
+
+    void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    void recordEviction() {
+        evictionCount.incrementAndGet();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public double getHitRatio() {
+        long hit = hitCount.get();
+        long total = hit + missCount.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+}
@@ -0,0 +1,113 @@
+package hello.jdbc.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * primary 커넥션 프록시 - 실제로 쓰기 문장(update/insert/delete/ddl)을 실행했을 때만 ReadWriteRoutingDataSource 에 알린다.
+ * executeQuery 만 한 커넥션은 쓰기로 보지 않는다. 트랜잭션이면 커밋할 때 한번 더 알려서 sticky 구간을 커밋 시점부터 센다.
+ * JDBC 커넥션은 한 스레드에서만 사용하므로 동기화하지 않는다.
+ */
+class WriteTrackingConnectionHandler implements InvocationHandler {
+
+    private final Connection target;
+    private final ReadWriteRoutingDataSource dataSource;
+    private Connection proxy;
+    private boolean wroteInTransaction;
+
+    WriteTrackingConnectionHandler(Connection target, ReadWriteRoutingDataSource dataSource) {
+        this.target = target;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        this.proxy = (Connection) proxy;
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "WriteTracking[" + target + "]";
+            case "createStatement":
+            case "prepareStatement":
+            case "prepareCall":
+                return wrap(method.getReturnType(), (Statement) invokeTarget(target, method, args));
+            case "commit":
+                invokeTarget(target, method, args);
+                if (wroteInTransaction) {
+                    wroteInTransaction = false;
+                    dataSource.markWrite();
+                }
+                return null;
+            case "rollback":
+                if (args == null) {
+                    wroteInTransaction = false;
+                }
+                break;
+        }
+        return invokeTarget(target, method, args);
+    }
+
+    private Object wrap(Class<?> type, Statement statement) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new StatementHandler(statement));
+    }
+
+    private void wrote() {
+        wroteInTransaction = true;
+        dataSource.markWrite();
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+
+        StatementHandler(Statement target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "WriteTracking[" + target + "]";
+                case "getConnection":
+                    return WriteTrackingConnectionHandler.this.proxy;
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "executeBatch":
+                case "executeLargeBatch": {
+                    Object result = invokeTarget(target, method, args);
+                    wrote();
+                    return result;
+                }
+                case "execute": {
+                    // false 면 결과가 update count - 쓰기 문장
+                    Object result = invokeTarget(target, method, args);
+                    if (Boolean.FALSE.equals(result)) {
+                        wrote();
+                    }
+                    return result;
+                }
+            }
+            return invokeTarget(target, method, args);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package hello.jdbc.domain;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * 이체 원장 한 건 - txId 는 원장이 발급하는 증가 번호
+ * TRANSFER : 이체, VOID : voidedTxId 이체가 롤백되어 무효 (fromId/toId/money 는 원래 이체와 같다)
+ * 잔액을 다시 계산할 때는 VOID 가 가리키는 TRANSFER 와 VOID 를 모두 건너뛴다.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class LedgerEntry {
+
+    private final long txId;
+    private final Type type;
+    private final long voidedTxId; // TRANSFER 면 0
+    private final String fromId;
+    private final String toId;
+    private final int money;
+    private final long timestamp; // epoch millis
+
+    public boolean isVoid() {
+        return type == Type.VOID;
+    }
+
+    public enum Type {
+        TRANSFER, VOID
+    }
+}
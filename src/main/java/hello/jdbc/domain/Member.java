@@ -7,6 +7,7 @@ public class Member {
 
     private String memberId;
     private int money;
+    private long version; // 낙관적 락 - 수정할 때마다 1 증가
 
     public Member() {
 
@@ -16,6 +17,12 @@ public class Member {
         this.memberId = memberId;
         this.money = money;
     }
+
+    public Member(String memberId, int money, long version) {
+        this.memberId = memberId;
+        this.money = money;
+        this.version = version;
+    }
 }
 
 
@@ -0,0 +1,20 @@
+package hello.jdbc.domain;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * 샤드 간 이체 기록 - 출금 샤드와 입금 샤드에 같은 transferId 로 하나씩 남는다.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class ShardTransfer {
+
+    private final String transferId;
+    private final String fromId;
+    private final String toId;
+    private final int money;
+    private final String status;
+}
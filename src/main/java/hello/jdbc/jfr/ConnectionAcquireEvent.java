@@ -0,0 +1,54 @@
+package hello.jdbc.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 커넥션 획득 이벤트 - 풀 대기 시간 포함
+ * 기본 threshold 는 1ms, 전부 보려면 recording 설정에서 threshold 를 0 으로 준다.
+ */
+@Name("hello.jdbc.ConnectionAcquire")
+@Label("JDBC Connection Acquire")
+@Category({JdbcEvents.CATEGORY, "JDBC"})
+@Description("커넥션 획득")
+@StackTrace(false)
+@Threshold("1 ms")
+public class ConnectionAcquireEvent extends Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Outcome")
+    String outcome = JdbcEvents.ERROR;
+
+    /**
+     * 이벤트가 꺼져 있으면 필드를 채우지 않는다. (객체는 JIT 이 escape analysis 로 없앤다)
+     */
+    public static ConnectionAcquireEvent start(String source) {
+        ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+        if (event.isEnabled()) {
+            event.source = source;
+            event.begin();
+        }
+        return event;
+    }
+
+    public void success() {
+        outcome = JdbcEvents.SUCCESS;
+    }
+
+    /**
+     * finally 에서 호출 - success() 를 호출하지 않았으면 error 로 남는다.
+     */
+    public void finish() {
+        end();
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package hello.jdbc.jfr;
+
+/**
+ * JFR 이벤트 공통 값
+ * memberId 는 개인정보라 그대로 남기지 않고 hashCode 만 남긴다. (같은 회원인지 구분하는 용도)
+ */
+public final class JdbcEvents {
+
+    public static final String CATEGORY = "hello-jdbc";
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+
+    private JdbcEvents() {
+    }
+
+    static int hash(String memberId) {
+        return memberId == null ? 0 : memberId.hashCode();
+    }
+}
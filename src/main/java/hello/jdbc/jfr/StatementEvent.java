@@ -0,0 +1,66 @@
+package hello.jdbc.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 리포지토리 sql 실행 이벤트 - 커넥션 획득부터 반납까지
+ * sqlId 는 "member.save" 처럼 리포지토리 메서드 단위 이름이다.
+ * 기본 threshold 는 1ms, 전부 보려면 recording 설정에서 threshold 를 0 으로 준다.
+ */
+@Name("hello.jdbc.Statement")
+@Label("JDBC Statement")
+@Category({JdbcEvents.CATEGORY, "JDBC"})
+@Description("리포지토리 sql 실행")
+@StackTrace(false)
+@Threshold("1 ms")
+public class StatementEvent extends Event {
+
+    @Label("SQL Id")
+    String sqlId;
+
+    @Label("Member Id Hash")
+    int memberIdHash;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Outcome")
+    String outcome = JdbcEvents.ERROR;
+
+    /**
+     * 이벤트가 꺼져 있으면 필드를 채우지 않는다. (객체는 JIT 이 escape analysis 로 없앤다)
+     */
+    public static StatementEvent start(String sqlId, String memberId) {
+        StatementEvent event = new StatementEvent();
+        if (event.isEnabled()) {
+            event.sqlId = sqlId;
+            event.memberIdHash = JdbcEvents.hash(memberId);
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * @param rows 조회/변경된 row 수
+     */
+    public void success(int rows) {
+        this.rows = rows;
+        this.outcome = JdbcEvents.SUCCESS;
+    }
+
+    /**
+     * finally 에서 호출 - success() 를 호출하지 않았으면 error 로 남는다.
+     */
+    public void finish() {
+        end();
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+}
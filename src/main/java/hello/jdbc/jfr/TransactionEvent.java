@@ -0,0 +1,64 @@
+package hello.jdbc.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 트랜잭션 종료 이벤트 - commit/rollback 호출 시간
+ * outcome 은 요청한 action 대로 끝났으면 success, commit 이 실패해서 롤백되었거나 예외가 나면 error
+ */
+@Name("hello.jdbc.Transaction")
+@Label("JDBC Transaction End")
+@Category({JdbcEvents.CATEGORY, "JDBC"})
+@Description("트랜잭션 commit/rollback")
+@StackTrace(false)
+public class TransactionEvent extends Event {
+
+    public static final String COMMIT = "commit";
+    public static final String ROLLBACK = "rollback";
+
+    @Label("SQL Id")
+    @Description("트랜잭션을 시작한 서비스 메서드")
+    String sqlId;
+
+    @Label("Member Id Hash")
+    int memberIdHash;
+
+    @Label("Action")
+    String action;
+
+    @Label("Outcome")
+    String outcome = JdbcEvents.ERROR;
+
+    /**
+     * 이벤트가 꺼져 있으면 필드를 채우지 않는다. (객체는 JIT 이 escape analysis 로 없앤다)
+     */
+    public static TransactionEvent start(String sqlId, String memberId, String action) {
+        TransactionEvent event = new TransactionEvent();
+        if (event.isEnabled()) {
+            event.sqlId = sqlId;
+            event.memberIdHash = JdbcEvents.hash(memberId);
+            event.action = action;
+            event.begin();
+        }
+        return event;
+    }
+
+    public void success() {
+        outcome = JdbcEvents.SUCCESS;
+    }
+
+    /**
+     * finally 에서 호출 - success() 를 호출하지 않았으면 error 로 남는다.
+     */
+    public void finish() {
+        end();
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+}
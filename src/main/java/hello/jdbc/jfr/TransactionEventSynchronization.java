@@ -0,0 +1,53 @@
+package hello.jdbc.jfr;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 트랜잭션 매니저가 commit/rollback 하는 구간에 TransactionEvent 를 남긴다.
+ * 트랜잭션 매니저/템플릿은 commit/rollback 을 직접 감쌀 수 없어서 동기화 콜백 beforeCompletion ~ afterCompletion 으로 잰다.
+ * commit 이면 beforeCommit 이 먼저 호출되므로 그것으로 commit/rollback 을 구분한다.
+ */
+public class TransactionEventSynchronization implements TransactionSynchronization {
+
+    private final String sqlId;
+    private final String memberId;
+    private String action = TransactionEvent.ROLLBACK;
+    private TransactionEvent event;
+
+    private TransactionEventSynchronization(String sqlId, String memberId) {
+        this.sqlId = sqlId;
+        this.memberId = memberId;
+    }
+
+    /**
+     * 현재 트랜잭션에 등록 - 트랜잭션 안에서 호출해야 하고, 이벤트가 꺼져 있으면 아무것도 하지 않는다.
+     */
+    public static void register(String sqlId, String memberId) {
+        if (new TransactionEvent().isEnabled() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionEventSynchronization(sqlId, memberId));
+        }
+    }
+
+    @Override
+    public void beforeCommit(boolean readOnly) {
+        action = TransactionEvent.COMMIT;
+    }
+
+    @Override
+    public void beforeCompletion() {
+        event = TransactionEvent.start(sqlId, memberId, action);
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+        if (event == null) {
+            return;
+        }
+        if ((status == STATUS_COMMITTED && action.equals(TransactionEvent.COMMIT))
+                || (status == STATUS_ROLLED_BACK && action.equals(TransactionEvent.ROLLBACK))) {
+            event.success();
+        }
+        event.finish();
+    }
+}
@@ -0,0 +1,230 @@
+package hello.jdbc.limit;
+
+import hello.jdbc.metrics.Counter;
+import hello.jdbc.metrics.MetricsRegistry;
+import hello.jdbc.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 적응형 동시 실행 제한 - 지연시간 기반 AIMD (Netflix Gradient 와 같은 방식)
+ * - 동시 실행 수가 limit 이상이면 기다리지 않고 LimitExceededException (DB 가 느려질 때 스레드가 쌓이지 않게)
+ * - 단기 평균 지연시간(최근 20 건 지수 평균)이 장기 평균(500 건 지수 평균)의 tolerance 배 + 1ms 보다 크거나
+ *   타임아웃이면 limit 을 0.9 배로 줄인다. 줄인 뒤에 시작한 요청의 결과만 다시 줄이는 데 쓰므로 한 번 느려진 구간에서 연달아 줄지 않는다.
+ * - 빠르게 끝났고 limit 의 절반 이상을 쓰고 있었으면 요청마다 1/limit 씩 (limit 만큼 끝나면 1) 늘린다.
+ * - 최소값이 아니라 평균끼리 비교하므로 짧은 조회와 긴 트랜잭션이 섞여 있어도 DB 가 건강하면 limit 이 줄지 않는다.
+ *   장기 평균은 천천히 따라가므로 DB 성능이 바뀌면 수백 건 뒤에 새 기준이 된다.
+ * - maxHold 보다 오래 반납하지 않은 허가(커넥션 누수)는 limit 에 걸렸을 때 회수하고 지연시간 표본으로 쓰지 않는다.
+ *
+ * 지표 : {name}.limit / {name}.inflight (gauge), {name}.rejected / {name}.expired (counter), {name}.rtt (timer)
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 200;
+    public static final double DEFAULT_TOLERANCE = 2.0;
+    public static final long DEFAULT_MAX_HOLD_MILLIS = 60_000;
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int SHORT_RTT_WINDOW = 20;
+    private static final int LONG_RTT_WINDOW = 500;
+    // 아주 짧은 지연시간(내장 H2 는 수십 us)의 지터로 줄이지 않도록 허용치에 더한다.
+    private static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long maxHoldNanos;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final Set<Permit> permits = ConcurrentHashMap.newKeySet();
+    private final Counter rejectedCounter;
+    private final Counter expiredCounter;
+    private final Timer rttTimer;
+
+    // limit 은 acquire 에서 lock 없이 읽고, 나머지는 onSample 안에서만 사용
+    private volatile double limit;
+    private double shortRtt;
+    private double longRtt;
+    private long samples;
+    private long lastDecreaseNanos = Long.MIN_VALUE;
+
+    public AdaptiveConcurrencyLimiter(String name, MetricsRegistry registry) {
+        this(name, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_TOLERANCE, registry);
+    }
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance,
+                                      MetricsRegistry registry) {
+        this(name, initialLimit, minLimit, maxLimit, tolerance, DEFAULT_MAX_HOLD_MILLIS, registry);
+    }
+
+    /**
+     * @param maxHoldMillis 이 시간보다 오래 반납하지 않은 허가는 누수로 보고 회수한다.
+     */
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance,
+                                      long maxHoldMillis, MetricsRegistry registry) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit || tolerance < 1 || maxHoldMillis < 1) {
+            throw new IllegalArgumentException("invalid limit initialLimit=" + initialLimit + " minLimit=" + minLimit
+                    + " maxLimit=" + maxLimit + " tolerance=" + tolerance + " maxHoldMillis=" + maxHoldMillis);
+        }
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.maxHoldNanos = TimeUnit.MILLISECONDS.toNanos(maxHoldMillis);
+        this.rejectedCounter = registry.counter(name + ".rejected");
+        this.expiredCounter = registry.counter(name + ".expired");
+        this.rttTimer = registry.timer(name + ".rtt");
+        registry.gauge(name + ".limit", this::getLimit);
+        registry.gauge(name + ".inflight", this::getInflight);
+    }
+
+    /**
+     * 실행 허가 - 끝나면 반드시 close
+     * @throws LimitExceededException 동시 실행 수가 limit 이상
+     */
+    public Permit acquire() {
+        boolean expired = false;
+        for (;;) {
+            int current = inflight.get();
+            int currentLimit = getLimit();
+            if (current >= currentLimit) {
+                if (!expired) {
+                    expired = true;
+                    if (expireLeaked() > 0) {
+                        continue;
+                    }
+                }
+                rejectedCounter.increment();
+                throw new LimitExceededException(name, currentLimit, current);
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                Permit permit = new Permit(current + 1, System.nanoTime());
+                permits.add(permit);
+                return permit;
+            }
+        }
+    }
+
+    /**
+     * maxHold 보다 오래된 허가 회수 - limit 에 걸렸을 때만 확인한다.
+     * @return 회수한 수
+     */
+    private int expireLeaked() {
+        long now = System.nanoTime();
+        int expired = 0;
+        for (Permit permit : permits) {
+            if (now - permit.startNanos >= maxHoldNanos && permit.release()) {
+                expired++;
+                expiredCounter.increment();
+                log.warn("concurrency permit expired name={} held={}ms", name,
+                        TimeUnit.NANOSECONDS.toMillis(now - permit.startNanos));
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 허가를 받아 실행 - 리포지토리/서비스 호출을 감쌀 때 사용, SQLTimeoutException 은 혼잡 신호로 본다.
+     */
+    public <T> T execute(LimitedCall<T> call) throws SQLException {
+        try (Permit permit = acquire()) {
+            try {
+                return call.call();
+            } catch (SQLTimeoutException e) {
+                permit.dropped();
+                throw e;
+            }
+        }
+    }
+
+    synchronized void onSample(long startNanos, long endNanos, int inflightAtStart, boolean dropped) {
+        long rtt = endNanos - startNanos;
+        // 처음 window 를 채우는 동안은 단순 평균 - 첫 표본 하나가 기준이 되지 않게
+        samples++;
+        shortRtt += (rtt - shortRtt) / Math.min(samples, SHORT_RTT_WINDOW);
+        longRtt += (rtt - longRtt) / Math.min(samples, LONG_RTT_WINDOW);
+
+        if (dropped || shortRtt > longRtt * tolerance + LATENCY_SLACK_NANOS) {
+            if (startNanos > lastDecreaseNanos) {
+                double decreased = Math.max(minLimit, limit * BACKOFF_RATIO);
+                log.debug("concurrency limit decrease name={} limit={} -> {} rtt={}us short={}us long={}us dropped={}",
+                        name, (int) limit, (int) decreased, rtt / 1000, (long) shortRtt / 1000, (long) longRtt / 1000,
+                        dropped);
+                limit = decreased;
+                lastDecreaseNanos = endNanos;
+            }
+        } else if (inflightAtStart * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @FunctionalInterface
+    public interface LimitedCall<T> {
+        T call() throws SQLException;
+    }
+
+    public class Permit implements AutoCloseable {
+
+        private final int inflightAtStart;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private boolean dropped;
+
+        private Permit(int inflightAtStart, long startNanos) {
+            this.inflightAtStart = inflightAtStart;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * 타임아웃 등 혼잡으로 실패 - 지연시간과 상관없이 limit 을 줄인다.
+         */
+        public void dropped() {
+            dropped = true;
+        }
+
+        /**
+         * 반납 - 여러 번 호출해도 한번만 반납하고, 이미 회수된 허가는 표본을 남기지 않는다.
+         */
+        @Override
+        public void close() {
+            if (!release()) {
+                return;
+            }
+            long end = System.nanoTime();
+            rttTimer.record(end - startNanos);
+            onSample(startNanos, end, inflightAtStart, dropped);
+        }
+
+        private boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+            permits.remove(this);
+            inflight.decrementAndGet();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package hello.jdbc.limit;
+
+/**
+ * 동시 실행 제한 초과 - 기다리지 않고 바로 거절한다.
+ * 재시도하면 부하가 더 커지므로 호출한 쪽에서 재시도하지 말고 실패 응답(503 등)으로 돌려준다.
+ * 트랜잭션 매니저가 커넥션을 얻다가 발생하면 CannotCreateTransactionException 으로 감싸지므로 isCause 로 확인한다.
+ */
+public class LimitExceededException extends RuntimeException {
+
+    private final int limit;
+    private final int inflight;
+
+    public LimitExceededException(String name, int limit, int inflight) {
+        super("concurrency limit exceeded name=" + name + " limit=" + limit + " inflight=" + inflight);
+        this.limit = limit;
+        this.inflight = inflight;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight;
+    }
+
+    public static boolean isCause(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof LimitExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,13 @@
+package hello.jdbc.metrics;
+
+/**
+ * 누적 건수 기록
+ */
+public interface Counter {
+
+    void increment(long amount);
+
+    default void increment() {
+        increment(1);
+    }
+}
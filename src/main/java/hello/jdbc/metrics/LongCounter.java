@@ -0,0 +1,26 @@
+package hello.jdbc.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class LongCounter implements Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    @Override
+    public void increment(long amount) {
+        count.add(amount);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public void reset() {
+        count.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount();
+    }
+}
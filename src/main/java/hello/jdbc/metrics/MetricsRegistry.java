@@ -0,0 +1,38 @@
+package hello.jdbc.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 지표 저장소 - 이름으로 Timer/Counter 를 돌려준다.
+ * 기본 구현은 SimpleMetricsRegistry, 다른 모니터링 시스템으로 보내려면 이 인터페이스를 구현한다.
+ * 같은 이름이면 같은 객체를 돌려줘야 하고, 호출하는 쪽은 미리 받아 두고 record/increment 만 호출한다.
+ */
+public interface MetricsRegistry {
+
+    MetricsRegistry NOOP = new MetricsRegistry() {
+        private final Timer timer = nanos -> {
+        };
+        private final Counter counter = amount -> {
+        };
+
+        @Override
+        public Timer timer(String name) {
+            return timer;
+        }
+
+        @Override
+        public Counter counter(String name) {
+            return counter;
+        }
+    };
+
+    Timer timer(String name);
+
+    Counter counter(String name);
+
+    /**
+     * 현재 값 - 조회할 때마다 supplier 를 호출한다. 같은 이름으로 다시 등록하면 바꾼다.
+     */
+    default void gauge(String name, LongSupplier supplier) {
+    }
+}
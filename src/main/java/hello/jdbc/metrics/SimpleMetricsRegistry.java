@@ -0,0 +1,67 @@
+package hello.jdbc.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 메모리 지표 저장소 - Timer 는 LatencyHistogram, Counter 는 LongCounter, gauge 는 등록한 supplier
+ */
+@Slf4j
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    private final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongCounter> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public LatencyHistogram timer(String name) {
+        LatencyHistogram timer = timers.get(name);
+        return timer != null ? timer : timers.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    @Override
+    public LongCounter counter(String name) {
+        LongCounter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, k -> new LongCounter());
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * @return 등록된 gauge 의 현재 값, 없으면 0
+     */
+    public long getGauge(String name) {
+        LongSupplier supplier = gauges.get(name);
+        return supplier == null ? 0 : supplier.getAsLong();
+    }
+
+    public Map<String, LatencyHistogram> getTimers() {
+        return Collections.unmodifiableMap(timers);
+    }
+
+    public Map<String, LongCounter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    public void reset() {
+        timers.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongCounter::reset);
+    }
+
+    /**
+     * 이름순으로 전체 지표를 로그에 남긴다.
+     */
+    public void report() {
+        new TreeMap<>(timers).forEach((name, timer) -> log.info("{} {}", name, timer));
+        new TreeMap<>(counters).forEach((name, counter) -> log.info("{} {}", name, counter));
+        new TreeMap<>(gauges).forEach((name, gauge) -> log.info("{} value={}", name, gauge.getAsLong()));
+    }
+}
@@ -0,0 +1,9 @@
+package hello.jdbc.metrics;
+
+/**
+ * 소요 시간 기록
+ */
+public interface Timer {
+
+    void record(long nanos);
+}
@@ -0,0 +1,284 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MemberRepositoryV3 + findById 읽기 캐시 (read-through)
+ * - 크기 제한(근사 LRU), TTL
+ *   전역 락 없이 ConcurrentHashMap 을 쓰고, 크기를 넘으면 SAMPLE_SIZE 개를 골라 가장 오래 사용하지 않은 항목을 제거한다.
+ * - 없는 회원도 짧게(negativeTtl) 캐시해서 같은 id 반복 조회 시 DB 에 가지 않는다.
+ * - save/update/delete 시 해당 회원 캐시 무효화
+ *   조회 전에 회원별 로딩 표시를 넣고, 조회 후 표시가 그대로일 때만 결과를 올린다. (다른 회원 무효화는 영향 없음)
+ * - 트랜잭션 안에서는 캐시를 사용하지 않는다. (커밋 전 값을 캐시에 올리지 않고, 커밋 후 한번 더 무효화)
+ */
+@Slf4j
+public class CachedMemberRepositoryV3 extends MemberRepositoryV3 {
+
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 1000;
+    // 제거할 항목을 고를 때 살펴보는 항목 수
+    static final int SAMPLE_SIZE = 8;
+
+    private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong negativeHitCount = new AtomicLong();
+
+    public CachedMemberRepositoryV3(DataSource dataSource, int maxSize, long ttl, TimeUnit unit) {
+        this(dataSource, maxSize, unit.toMillis(ttl), DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+
+    public CachedMemberRepositoryV3(DataSource dataSource, int maxSize, long ttlMillis, long negativeTtlMillis) {
+        super(dataSource);
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive maxSize=" + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+    }
+
+    /**
+     * findById 도 이 메서드를 거치므로 함께 캐시된다.
+     */
+    @Override
+    public Optional<Member> findOptionalById(String memberId) throws SQLException {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return super.findOptionalById(memberId);
+        }
+
+        long now = System.nanoTime();
+        CacheEntry entry = cache.get(memberId);
+        if (entry != null && !entry.loading && entry.expireAt - now > 0) {
+            entry.lastAccess = now;
+            if (entry.absent) {
+                negativeHitCount.incrementAndGet();
+                return Optional.empty();
+            }
+            hitCount.incrementAndGet();
+            return Optional.of(new Member(memberId, entry.money, entry.version));
+        }
+
+        missCount.incrementAndGet();
+        // 다른 스레드가 이미 조회 중이면 그 결과가 올라가므로 DB 에서만 읽는다.
+        CacheEntry loading = entry != null && entry.loading ? null : CacheEntry.loading(now);
+        if (loading != null && !(entry == null
+                ? cache.putIfAbsent(memberId, loading) == null
+                : cache.replace(memberId, entry, loading))) {
+            loading = null;
+        }
+
+        Optional<Member> member;
+        try {
+            member = super.findOptionalById(memberId);
+        } catch (SQLException | RuntimeException e) {
+            if (loading != null) {
+                cache.remove(memberId, loading);
+            }
+            throw e;
+        }
+        // 조회 중 무효화되었으면 로딩 표시가 지워졌으므로 올리지 않는다.
+        if (loading != null && cache.replace(memberId, loading, member
+                .map(m -> CacheEntry.present(m.getMoney(), m.getVersion(), now, now + ttlNanos))
+                .orElseGet(() -> CacheEntry.absent(now, now + negativeTtlNanos)))) {
+            evictIfFull(memberId);
+        }
+        return member;
+    }
+
+    @Override
+    public Member save(Member member) throws SQLException {
+        Member saved = super.save(member);
+        evict(member.getMemberId());
+        return saved;
+    }
+
+    @Override
+    public void update(String memberId, int money) throws SQLException {
+        super.update(memberId, money);
+        evict(memberId);
+    }
+
+    @Override
+    public boolean updateWithVersion(String memberId, int money, long version) throws SQLException {
+        boolean updated = super.updateWithVersion(memberId, money, version);
+        evict(memberId);
+        return updated;
+    }
+
+    @Override
+    public void delete(String memberId) throws SQLException {
+        super.delete(memberId);
+        evict(memberId);
+    }
+
+    @Override
+    public void withdraw(String memberId, int money) throws SQLException {
+        super.withdraw(memberId, money);
+        evict(memberId);
+    }
+
+    @Override
+    public void deposit(String memberId, int money) throws SQLException {
+        super.deposit(memberId, money);
+        evict(memberId);
+    }
+
+    @Override
+    public int[] saveAll(Collection<Member> members) throws SQLException {
+        int[] result = super.saveAll(members);
+        for (Member member : members) {
+            evict(member.getMemberId());
+        }
+        return result;
+    }
+
+    @Override
+    public int[] updateAll(Map<String, Integer> moneyByMemberId) throws SQLException {
+        int[] result = super.updateAll(moneyByMemberId);
+        for (String memberId : moneyByMemberId.keySet()) {
+            evict(memberId);
+        }
+        return result;
+    }
+
+    @Override
+    public int[] applyDeltas(Map<String, Integer> deltaByMemberId) throws SQLException {
+        int[] result = super.applyDeltas(deltaByMemberId);
+        for (String memberId : deltaByMemberId.keySet()) {
+            evict(memberId);
+        }
+        return result;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+
+    public double getHitRatio() {
+        long hit = hitCount.get();
+        long total = hit + missCount.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private void evict(String memberId) {
+        remove(memberId);
+        // 트랜잭션 중 다른 스레드가 커밋 이전 값을 다시 캐시할 수 있으므로 완료 후에도 무효화
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(memberId);
+                }
+            });
+        }
+    }
+
+    private void remove(String memberId) {
+        cache.remove(memberId);
+    }
+
+    /**
+     * 크기를 넘으면 임의 위치의 SAMPLE_SIZE 개 중 만료됐거나 가장 오래 사용하지 않은 항목을 제거 (근사 LRU)
+     * - 방금 올린 항목과 조회 중인 로딩 표시는 제외한다.
+     */
+    private void evictIfFull(String loadedId) {
+        while (cache.size() > maxSize) {
+            long now = System.nanoTime();
+            int size = cache.size();
+            int skip = size > SAMPLE_SIZE ? ThreadLocalRandom.current().nextInt(size - SAMPLE_SIZE + 1) : 0;
+            Iterator<Map.Entry<String, CacheEntry>> it = cache.entrySet().iterator();
+            for (int i = 0; i < skip && it.hasNext(); i++) {
+                it.next();
+            }
+            String victimId = null;
+            CacheEntry victim = null;
+            for (int i = 0; i < SAMPLE_SIZE && it.hasNext(); i++) {
+                Map.Entry<String, CacheEntry> candidate = it.next();
+                CacheEntry value = candidate.getValue();
+                if (value.loading || candidate.getKey().equals(loadedId)) {
+                    continue;
+                }
+                if (value.expireAt - now <= 0) {
+                    victimId = candidate.getKey();
+                    victim = value;
+                    break;
+                }
+                if (victim == null || value.lastAccess - victim.lastAccess < 0) {
+                    victimId = candidate.getKey();
+                    victim = value;
+                }
+            }
+            if (victim == null) {
+                return; // 제거할 수 있는 항목이 없으면 잠시 크기를 넘는다.
+            }
+            cache.remove(victimId, victim);
+        }
+    }
+
+    /**
+     * equals 를 재정의하지 않는다. - replace/remove 는 같은 객체일 때만 성공
+     */
+    private static class CacheEntry {
+        private final boolean loading;
+        private final boolean absent;
+        private final int money;
+        private final long version;
+        private final long expireAt;
+        private volatile long lastAccess;
+
+        private CacheEntry(boolean loading, boolean absent, int money, long version, long lastAccess, long expireAt) {
+            this.loading = loading;
+            this.absent = absent;
+            this.money = money;
+            this.version = version;
+            this.lastAccess = lastAccess;
+            this.expireAt = expireAt;
+        }
+
+        static CacheEntry loading(long now) {
+            return new CacheEntry(true, false, 0, 0, now, now);
+        }
+
+        static CacheEntry present(int money, long version, long now, long expireAt) {
+            return new CacheEntry(false, false, money, version, now, expireAt);
+        }
+
+        static CacheEntry absent(long now, long expireAt) {
+            return new CacheEntry(false, true, 0, 0, now, expireAt);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package hello.jdbc.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 일관된 해시 - 샤드마다 가상 노드 virtualNodes 개를 링에 올리고, 키 해시 다음에 오는 노드의 샤드를 고른다.
+ * 샤드를 하나 늘려도 약 1/N 의 키만 옮겨진다.
+ * 링은 정렬된 배열이라 조회는 이진 탐색 한번이다.
+ */
+public class ConsistentHash {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final long[] ring;
+    private final int[] shards;
+
+    public ConsistentHash(int shardCount) {
+        this(shardCount, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHash(int shardCount, int virtualNodes) {
+        if (shardCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("shardCount=" + shardCount + ", virtualNodes=" + virtualNodes);
+        }
+        int size = shardCount * virtualNodes;
+        long[][] nodes = new long[size][];
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                nodes[shard * virtualNodes + v] = new long[]{hash("shard-" + shard + "-" + v), shard};
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.ring = new long[size];
+        this.shards = new int[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = nodes[i][0];
+            shards[i] = (int) nodes[i][1];
+        }
+    }
+
+    public int shardOf(String key) {
+        int index = Arrays.binarySearch(ring, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return shards[index == ring.length ? 0 : index];
+    }
+
+    /**
+     * FNV-1a 64 + murmur3 finalizer - 짧은 id 도 링 전체에 고르게 퍼지도록 섞는다.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,312 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 핫 계좌 잔액 분산 - 입금이 몰리는 회원의 잔액을 K 개의 하위 row 로 나눈다.
+ * 잔액 = member.money + sum(member_balance_shard.money), version = member.version + sum(member_balance_shard.version)
+ * - 조회(findById, findByIds, findAll, 범위/페이지 조회) : 하위 row 를 합산한 잔액과 version 을 돌려준다.
+ * - findByIdForUpdate : member row 와 하위 row 를 모두 잠그고 합산한다.
+ * - credit : 스레드별로 하위 row 하나에만 더하고 그 row 의 version 을 올린다. member row 는 건드리지 않으므로
+ *   같은 회원에 대한 입금끼리 서로 기다리지 않는다.
+ * - withdraw(debit) : member row 에서 먼저 빼 보고, 모자라면 하위 row 를 잠그고 member row 로 모은 뒤 뺀다.
+ * - update, updateWithVersion, updateAll : 합산 잔액을 지정한다. member row 에 전체 잔액을 두고 하위 row 는 0 으로 만든다.
+ *   updateWithVersion 은 member row 와 하위 row 를 잠근 뒤 합산 version 을 비교한다.
+ * - 여러 문장이 필요한 작업은 트랜잭션 밖에서 호출하면 이 리포지토리가 로컬 트랜잭션을 열어 실행한다.
+ * - deposit, applyDeltas : member row 에 상대값을 더하므로 하위 row 와 상관없이 합계가 맞다.
+ * enableShardedBalance 로 지정한 회원만 분산되고, 나머지는 MemberRepositoryV3 와 같다.
+ * member row 를 먼저, 하위 row 를 나중에 잠근다. (credit 은 하위 row 하나만 잠근다)
+ *
+ * 테이블은 resources/schema-balance-shard.sql
+ */
+@Slf4j
+public class HotAccountMemberRepositoryV3 extends MemberRepositoryV3 {
+
+    // 합산 잔액 - member_id 조건이 서브쿼리 안으로 들어가서 PK 로 찾는다.
+    private static final String MEMBER_TOTAL = "(select m.member_id, " +
+            "m.money + coalesce((select sum(s.money) from member_balance_shard s where s.member_id = m.member_id), 0) as money, " +
+            "m.version + coalesce((select sum(s.version) from member_balance_shard s where s.member_id = m.member_id), 0) as version " +
+            "from member m) member_total";
+
+    private final TransactionTemplate localTx;
+
+    public HotAccountMemberRepositoryV3(DataSource dataSource) {
+        super(dataSource);
+        this.localTx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Override
+    protected String memberSource() {
+        return MEMBER_TOTAL;
+    }
+
+    /**
+     * 비관적 락 - member row 와 하위 row 를 모두 잠그고 합산 잔액을 돌려준다.
+     * 하위 row 도 잠그므로 커밋할 때까지 credit 이 끼어들지 못한다.
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) throws SQLException {
+        Member member = super.findByIdForUpdate(memberId);
+        ShardTotal shards = lockShards(memberId);
+        member.setMoney(member.getMoney() + shards.money);
+        member.setVersion(member.getVersion() + shards.version);
+        return member;
+    }
+
+    /**
+     * 잔액 분산 시작 - 하위 row shards 개 생성 (이미 있으면 무시)
+     */
+    public void enableShardedBalance(String memberId, int shards) throws SQLException {
+        // 이미 있는 하위 row 는 money 를 건드리지 않는다.
+        String sql = "merge into member_balance_shard(member_id, shard) key(member_id, shard) values(?, ?)";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            for (int shard = 0; shard < shards; shard++) {
+                pstmt.setString(1, memberId);
+                pstmt.setInt(2, shard);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    /**
+     * 입금 - 분산된 회원이면 현재 스레드의 하위 row 에, 아니면 member row 에 더한다. 더한 row 의 version 을 올린다.
+     * 하위 row 가 없으면 mod(?, null) 이 null 이 되어 0 건 update -> member row 입금
+     */
+    public void credit(String memberId, int money) throws SQLException {
+        String shardSql = "update member_balance_shard set money=money+?, version=version+1 where member_id=? " +
+                "and shard = mod(?, nullif((select count(*) from member_balance_shard where member_id=?), 0))";
+        String memberSql = "update member set money=money+?, version=version+1 where member_id=?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(shardSql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            pstmt.setLong(3, Thread.currentThread().getId());
+            pstmt.setString(4, memberId);
+            if (pstmt.executeUpdate() > 0) {
+                return;
+            }
+            JdbcUtils.closeStatement(pstmt);
+            pstmt = con.prepareStatement(memberSql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            if (pstmt.executeUpdate() == 0) {
+                throw new NoSuchElementException("member not found memberId=" + memberId);
+            }
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    /**
+     * 출금 - member row 잔액으로 충분하면 조건부 update 한번으로 끝난다.
+     * 모자라면 member row 와 하위 row 를 for update 로 잠그고 합계를 member row 로 모은 뒤 뺀다.
+     * 모으는 단계는 여러 문장이라 트랜잭션 안에서만 허용한다.
+     */
+    @Override
+    public void withdraw(String memberId, int money) throws SQLException {
+        try {
+            super.withdraw(memberId, money);
+            return;
+        } catch (IllegalStateException e) {
+            log.info("main row insufficient, drain shards memberId={}", memberId);
+        }
+
+        inTransaction(() -> {
+            Member member = findByIdForUpdate(memberId);
+            if (member.getMoney() < money) {
+                throw new IllegalStateException("insufficient money memberId=" + memberId);
+            }
+            update(memberId, member.getMoney() - money);
+            return null;
+        });
+    }
+
+    /**
+     * withdraw 와 같다.
+     */
+    public void debit(String memberId, int money) throws SQLException {
+        withdraw(memberId, money);
+    }
+
+    /**
+     * 잔액 직접 지정 - 하위 row 를 0 으로 만들고 member row 에 전체 잔액을 둔다.
+     * money 는 findByIdForUpdate 로 읽은 합산 잔액을 기준으로 계산해야 한다.
+     */
+    @Override
+    public void update(String memberId, int money) throws SQLException {
+        inTransaction(() -> {
+            super.update(memberId, money);
+            resetShards(memberId);
+            return null;
+        });
+    }
+
+    /**
+     * 낙관적 락 - findById 로 읽은 합산 잔액과 version 기준. 그 사이 credit 이 있었으면 하위 row version 이 달라서 실패한다.
+     * member row 와 하위 row 를 잠근 뒤 비교하므로 진행 중인 credit 이 끝나기를 기다렸다가 판단한다.
+     */
+    @Override
+    public boolean updateWithVersion(String memberId, int money, long version) throws SQLException {
+        return inTransaction(() -> {
+            Member member = super.findByIdForUpdate(memberId);
+            ShardTotal shards = lockShards(memberId);
+            if (member.getVersion() + shards.version != version) {
+                return false;
+            }
+            super.update(memberId, money);
+            resetShards(memberId);
+            return true;
+        });
+    }
+
+    @Override
+    public int[] updateAll(Map<String, Integer> moneyByMemberId) throws SQLException {
+        return inTransaction(() -> {
+            int[] result = super.updateAll(moneyByMemberId);
+            resetShards(moneyByMemberId.keySet());
+            return result;
+        });
+    }
+
+    @Override
+    public void delete(String memberId) throws SQLException {
+        super.delete(memberId);
+        deleteShards(memberId);
+    }
+
+    private void resetShards(String memberId) throws SQLException {
+        executeShardUpdate("update member_balance_shard set money=0 where member_id=?", memberId);
+    }
+
+    private void resetShards(Collection<String> memberIds) throws SQLException {
+        String sql = "update member_balance_shard set money=0 where member_id=?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            for (String memberId : memberIds) {
+                pstmt.setString(1, memberId);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    /**
+     * 하위 row 를 잠그며 합산 - 집계 쿼리에는 for update 를 쓸 수 없으므로 row 를 읽어 직접 더한다.
+     */
+    private ShardTotal lockShards(String memberId) throws SQLException {
+        String sql = "select money, version from member_balance_shard where member_id=? for update";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, memberId);
+            rs = pstmt.executeQuery();
+            ShardTotal total = new ShardTotal();
+            while (rs.next()) {
+                total.money += rs.getInt("money");
+                total.version += rs.getLong("version");
+            }
+            return total;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        } }
+
+    /**
+     * 여러 문장 작업 - 호출자의 트랜잭션이 있으면 참여하고, 없으면 로컬 트랜잭션으로 실행한다.
+     */
+    private <T> T inTransaction(ShardWork<T> work) throws SQLException {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.run();
+        }
+        try {
+            return localTx.execute(status -> {
+                try {
+                    return work.run();
+                } catch (SQLException e) {
+                    throw new ShardWorkException(e);
+                }
+            });
+        } catch (ShardWorkException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void deleteShards(String memberId) throws SQLException {
+        executeShardUpdate("delete from member_balance_shard where member_id=?", memberId);
+    }
+
+    private void executeShardUpdate(String sql, String memberId) throws SQLException {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, memberId);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    private interface ShardWork<T> {
+        T run() throws SQLException;
+    }
+
+    private static class ShardWorkException extends RuntimeException {
+        ShardWorkException(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    private static class ShardTotal {
+        private int money;
+        private long version;
+    }
+}
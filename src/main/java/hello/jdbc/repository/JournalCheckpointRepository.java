@@ -0,0 +1,87 @@
+package hello.jdbc.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 반영이 끝난 journal 번호 기록 - journal 반영과 같은 트랜잭션에서 기록해서 재시작 시 두번 반영하지 않는다.
+ *
+ * create table journal_checkpoint (journal_id bigint primary key) - resources/schema-journal-checkpoint.sql
+ */
+@Slf4j
+public class JournalCheckpointRepository {
+    private final DataSource dataSource;
+    public JournalCheckpointRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public boolean isApplied(long journalId) throws SQLException {
+        String sql = "select count(*) from journal_checkpoint where journal_id = ?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setLong(1, journalId);
+            rs = pstmt.executeQuery();
+            rs.next();
+            return rs.getInt(1) > 0;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        } }
+
+    public void markApplied(long journalId) throws SQLException {
+        String sql = "insert into journal_checkpoint(journal_id) values(?)";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setLong(1, journalId);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    /**
+     * journalId 보다 앞선 checkpoint 삭제 - 이미 지운 journal 의 기록
+     */
+    public int deleteBefore(long journalId) throws SQLException {
+        String sql = "delete from journal_checkpoint where journal_id < ?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setLong(1, journalId);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    private void close(Connection con, Statement stmt, ResultSet rs) {
+        JdbcUtils.closeResultSet(rs);
+        JdbcUtils.closeStatement(stmt);
+        DataSourceUtils.releaseConnection(con, dataSource);
+    }
+    private Connection getConnection() throws SQLException {
+        return DataSourceUtils.getConnection(dataSource);
+    } }
@@ -0,0 +1,109 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.LedgerEntry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * 이체 원장 테이블 - 원장 세그먼트를 모아서 적재한다.
+ *
+ * create table transfer_ledger (
+ *     tx_id bigint primary key, entry_type varchar(8) not null, voided_tx_id bigint,
+ *     from_id varchar(10) not null, to_id varchar(10) not null, money integer not null, created_at timestamp not null)
+ * resources/schema-transfer-ledger.sql
+ */
+@Slf4j
+public class LedgerRepository {
+    private final DataSource dataSource;
+    public LedgerRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * 배치 적재 - 이미 있는 tx_id 는 덮어쓰므로 같은 구간을 다시 적재해도 된다.
+     */
+    public int[] saveAll(List<LedgerEntry> entries) throws SQLException {
+        String sql = "merge into transfer_ledger(tx_id, entry_type, voided_tx_id, from_id, to_id, money, created_at) " +
+                "key(tx_id) values(?, ?, ?, ?, ?, ?, ?)";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            for (LedgerEntry entry : entries) {
+                pstmt.setLong(1, entry.getTxId());
+                pstmt.setString(2, entry.getType().name());
+                if (entry.isVoid()) {
+                    pstmt.setLong(3, entry.getVoidedTxId());
+                } else {
+                    pstmt.setNull(3, Types.BIGINT);
+                }
+                pstmt.setString(4, entry.getFromId());
+                pstmt.setString(5, entry.getToId());
+                pstmt.setInt(6, entry.getMoney());
+                pstmt.setTimestamp(7, new Timestamp(entry.getTimestamp()));
+                pstmt.addBatch();
+            }
+            return pstmt.executeBatch();
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    /**
+     * 적재된 마지막 txId (없으면 0)
+     */
+    public long findLastTxId() throws SQLException {
+        String sql = "select coalesce(max(tx_id), 0) from transfer_ledger";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            rs = pstmt.executeQuery();
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        } }
+
+    public void deleteAll() throws SQLException {
+        String sql = "delete from transfer_ledger";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    private void close(Connection con, Statement stmt, ResultSet rs) {
+        JdbcUtils.closeResultSet(rs);
+        JdbcUtils.closeStatement(stmt);
+        DataSourceUtils.releaseConnection(con, dataSource);
+    }
+    private Connection getConnection() throws SQLException {
+        return DataSourceUtils.getConnection(dataSource);
+    } }
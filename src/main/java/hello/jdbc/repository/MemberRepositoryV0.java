@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.sql.*;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 
 /**
  * JDBC - DriveManager 사용
@@ -40,6 +41,14 @@ public class MemberRepositoryV0 {
     }
 
     public Member findById(String memberId) throws SQLException {
+        return findOptionalById(memberId)
+                .orElseThrow(() -> new NoSuchElementException("member not found memberId="+memberId));
+    }
+
+    /**
+     * 회원이 없으면 예외 대신 Optional.empty()
+     */
+    public Optional<Member> findOptionalById(String memberId) throws SQLException {
         String sql = "select * from member where member_id = ?";
 
         Connection con = null;
@@ -56,9 +65,9 @@ public class MemberRepositoryV0 {
                 Member member = new Member();
                 member.setMemberId(rs.getString("member_id"));
                 member.setMoney(rs.getInt("money"));
-                return member;
+                return Optional.of(member);
             }else{
-                throw new NoSuchElementException("member not found memberId="+memberId);
+                return Optional.empty();
             }
 
 
@@ -6,6 +6,7 @@ import org.springframework.jdbc.support.JdbcUtils;
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 /**
  * JDBC - ConnectionParam
  */
@@ -34,6 +35,15 @@ public class MemberRepositoryV2 {
         } }
 
     public Member findById(String memberId) throws SQLException {
+        return findOptionalById(memberId)
+                .orElseThrow(() -> new NoSuchElementException("member not found memberId=" +
+                        memberId));
+    }
+
+    /**
+     * 회원이 없으면 예외 대신 Optional.empty()
+     */
+    public Optional<Member> findOptionalById(String memberId) throws SQLException {
         String sql = "select * from member where member_id = ?";
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -47,10 +57,9 @@ public class MemberRepositoryV2 {
                 Member member = new Member();
                 member.setMemberId(rs.getString("member_id"));
                 member.setMoney(rs.getInt("money"));
-                return member;
+                return Optional.of(member);
             } else {
-                throw new NoSuchElementException("member not found memberId=" +
-                        memberId);
+                return Optional.empty();
             }
         } catch (SQLException e) {
             log.error("db error", e);
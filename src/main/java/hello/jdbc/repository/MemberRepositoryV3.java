@@ -1,80 +1,541 @@
 package hello.jdbc.repository;
 
+import hello.jdbc.connection.ReadWriteRoutingDataSource;
 import hello.jdbc.domain.Member;
+import hello.jdbc.jfr.StatementEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * JDBC - 트랜잭션 매니저
  * DataSourceUtils.getConnection()
  * DataSourceUtils.releaseConnection() // 커넥션 닫기
+ *
+ * 낙관적 락을 위해 member 테이블에 version 컬럼이 필요하다. 수정할 때마다 version 이 1 증가한다.
+ * 스키마는 resources/schema.sql (기존 테이블에는 version 컬럼만 추가한다), 잔고 순서 조회 인덱스는 schema-member-money-index.sql
+ *
+ * 조회 메서드는 getReadConnection() 으로 커넥션을 얻는다. ReadWriteRoutingDataSource 를 쓰면 트랜잭션 밖의 조회는 replica 로 간다.
+ * 회원 한 명 단위 메서드는 JFR 이벤트(hello.jdbc.Statement, sqlId=member.xxx)를 남긴다.
  */
 @Slf4j
 public class MemberRepositoryV3 {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_FETCH_SIZE = 100;
+    // IN 절 크기 - 같은 sql 이 재사용되도록 남는 자리는 마지막 id 로 채운다.
+    private static final int[] IN_LIST_SIZES = {1, 10, 100};
+
     private final DataSource dataSource;
+    private final int batchSize;
     public MemberRepositoryV3(DataSource dataSource) {
+        this(dataSource, DEFAULT_BATCH_SIZE);
+    }
+    public MemberRepositoryV3(DataSource dataSource, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive batchSize=" + batchSize);
+        }
         this.dataSource = dataSource;
+        this.batchSize = batchSize;
     }
     public Member save(Member member) throws SQLException {
         String sql = "insert into member(member_id, money) values(?, ?)";
         Connection con = null;
         PreparedStatement pstmt = null;
+        StatementEvent event = StatementEvent.start("member.save", member.getMemberId());
         try {
             con = getConnection();
             pstmt = con.prepareStatement(sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
-            pstmt.executeUpdate();
+            event.success(pstmt.executeUpdate());
             return member;
         } catch (SQLException e) {
             log.error("db error", e);
             throw e;
         } finally {
             close(con, pstmt, null);
+            event.finish();
         } }
 
     public Member findById(String memberId) throws SQLException {
-        String sql = "select * from member where member_id = ?";
+        return findOptionalById(memberId)
+                .orElseThrow(() -> new NoSuchElementException("member not found memberId=" + memberId));
+    }
+
+    /**
+     * 회원이 없으면 예외 대신 Optional.empty() - 없는 id 를 자주 조회하는 경로용
+     */
+    public Optional<Member> findOptionalById(String memberId) throws SQLException {
+        String sql = "select * from " + memberSource() + " where member_id = ?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        StatementEvent event = StatementEvent.start("member.findById", memberId);
+        try {
+            con = getReadConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, memberId);
+            rs = pstmt.executeQuery();
+            if (rs.next()) {
+                Member member = mapMember(rs);
+                event.success(1);
+                return Optional.of(member);
+            } else {
+                event.success(0);
+                return Optional.empty();
+            }
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+            event.finish();
+        } }
+
+    /**
+     * 비관적 락 - select ... for update
+     * 트랜잭션 안에서 호출해야 하며, 커밋/롤백 할 때까지 다른 트랜잭션이 해당 row 를 수정할 수 없다.
+     */
+    public Member findByIdForUpdate(String memberId) throws SQLException {
+        String sql = "select * from member where member_id = ? for update";
         Connection con = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
+        StatementEvent event = StatementEvent.start("member.findByIdForUpdate", memberId);
         try {
             con = getConnection();
             pstmt = con.prepareStatement(sql);
             pstmt.setString(1, memberId);
             rs = pstmt.executeQuery();
             if (rs.next()) {
-                Member member = new Member();
-                member.setMemberId(rs.getString("member_id"));
-                member.setMoney(rs.getInt("money"));
+                Member member = mapMember(rs);
+                event.success(1);
                 return member;
             } else {
-                throw new NoSuchElementException("member not found memberId=" +
-                        memberId);
+                throw new NoSuchElementException("member not found memberId=" + memberId);
             }
         } catch (SQLException e) {
             log.error("db error", e);
             throw e;
         } finally {
             close(con, pstmt, rs);
+            event.finish();
         } }
 
     public void update(String memberId, int money) throws SQLException {
-        String sql = "update member set money=? where member_id=?";
+        String sql = "update member set money=?, version=version+1 where member_id=?";
         Connection con = null;
         PreparedStatement pstmt = null;
+        StatementEvent event = StatementEvent.start("member.update", memberId);
         try {
             con = getConnection();
             pstmt = con.prepareStatement(sql);
 
             pstmt.setInt(1, money);
             pstmt.setString(2, memberId);
-            pstmt.executeUpdate();
+            event.success(pstmt.executeUpdate());
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+            event.finish();
+        } }
+
+    /**
+     * 여러 회원 한번에 조회 - 커넥션 하나로 최대 100개씩 IN 절 조회
+     * 없는 memberId 는 예외 없이 결과 Map 에서 빠진다.
+     */
+    public Map<String, Member> findByIds(Collection<String> memberIds) throws SQLException {
+        if (memberIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<String> distinctIds = new LinkedHashSet<>(memberIds);
+        Iterator<String> it = distinctIds.iterator();
+        int maxSize = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        Map<String, Member> result = new HashMap<>();
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getReadConnection();
+            List<String> chunk = new ArrayList<>(maxSize);
+            while (it.hasNext()) {
+                chunk.clear();
+                while (it.hasNext() && chunk.size() < maxSize) {
+                    chunk.add(it.next());
+                }
+                int size = inListSize(chunk.size());
+                pstmt = con.prepareStatement("select * from " + memberSource() + " where member_id in (" + placeholders(size) + ")");
+                for (int i = 0; i < size; i++) {
+                    pstmt.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    Member member = mapMember(rs);
+                    result.put(member.getMemberId(), member);
+                }
+                JdbcUtils.closeResultSet(rs);
+                JdbcUtils.closeStatement(pstmt);
+                rs = null;
+                pstmt = null;
+            }
+            if (result.size() < distinctIds.size()) {
+                log.info("findByIds missing count={}", distinctIds.size() - result.size());
+            }
+            return result;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    private static int inListSize(int count) {
+        for (int size : IN_LIST_SIZES) {
+            if (count <= size) {
+                return size;
+            }
+        }
+        return IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+    }
+
+    private static String placeholders(int size) {
+        StringBuilder sb = new StringBuilder(size * 2);
+        for (int i = 0; i < size; i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.toString();
+    }
+
+    public Stream<Member> findAll() throws SQLException {
+        return findAll(DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * 전체 회원 스트리밍 조회 - forward-only 커서로 fetchSize 만큼씩 가져온다.
+     * 스트림을 닫을 때 커넥션을 반납하므로 반드시 try-with-resources 로 사용한다.
+     * H2 내장 모드에서는 URL 에 LAZY_QUERY_EXECUTION=1 을 주어야 결과를 한번에 올리지 않는다.
+     */
+    public Stream<Member> findAll(int fetchSize) throws SQLException {
+        String sql = "select * from " + memberSource() + " order by member_id";
+        return stream(sql, fetchSize, pstmt -> { });
+    }
+
+    public Stream<Member> findByMoneyRange(int minMoney, int maxMoney) throws SQLException {
+        return findByMoneyRange(minMoney, maxMoney, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * minMoney <= money <= maxMoney 회원 스트리밍 조회
+     */
+    public Stream<Member> findByMoneyRange(int minMoney, int maxMoney, int fetchSize) throws SQLException {
+        String sql = "select * from " + memberSource() + " where money between ? and ? order by member_id";
+        return stream(sql, fetchSize, pstmt -> {
+            pstmt.setInt(1, minMoney);
+            pstmt.setInt(2, maxMoney);
+        });
+    }
+
+    /**
+     * 키셋(seek) 페이지 조회 - member_id 순서로 lastMemberId 다음부터 limit 건
+     * OFFSET 을 쓰지 않고 PK 인덱스에서 바로 시작 위치를 찾으므로 뒤 페이지도 비용이 같다.
+     * @param lastMemberId 이전 페이지의 마지막 memberId, 첫 페이지는 null
+     */
+    public List<Member> findPageAfter(String lastMemberId, int limit) throws SQLException {
+        if (lastMemberId == null) {
+            String sql = "select * from " + memberSource() + " order by member_id limit ?";
+            return findPage(sql, pstmt -> pstmt.setInt(1, limit));
+        }
+        String sql = "select * from " + memberSource() + " where member_id > ? order by member_id limit ?";
+        return findPage(sql, pstmt -> {
+            pstmt.setString(1, lastMemberId);
+            pstmt.setInt(2, limit);
+        });
+    }
+
+    /**
+     * 키셋(seek) 페이지 조회 - (money, member_id) 순서
+     * 인덱스 필요: create index idx_member_money on member(money, member_id)
+     * @param lastMemberId 이전 페이지의 마지막 memberId, 첫 페이지는 null (lastMoney 무시)
+     */
+    public List<Member> findPageAfterMoney(int lastMoney, String lastMemberId, int limit) throws SQLException {
+        if (lastMemberId == null) {
+            String sql = "select * from " + memberSource() + " order by money, member_id limit ?";
+            return findPage(sql, pstmt -> pstmt.setInt(1, limit));
+        }
+        // (money, member_id) > (?, ?) - money >= ? 를 앞에 두어 인덱스 범위 스캔 시작점으로 쓴다.
+        String sql = "select * from " + memberSource() + " where money >= ? and (money > ? or member_id > ?) " +
+                "order by money, member_id limit ?";
+        return findPage(sql, pstmt -> {
+            pstmt.setInt(1, lastMoney);
+            pstmt.setInt(2, lastMoney);
+            pstmt.setString(3, lastMemberId);
+            pstmt.setInt(4, limit);
+        });
+    }
+
+    private List<Member> findPage(String sql, ParameterBinder binder) throws SQLException {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getReadConnection();
+            pstmt = con.prepareStatement(sql);
+            binder.bind(pstmt);
+            rs = pstmt.executeQuery();
+            List<Member> members = new ArrayList<>();
+            while (rs.next()) {
+                members.add(mapMember(rs));
+            }
+            return members;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        } }
+
+    private Stream<Member> stream(String sql, int fetchSize, ParameterBinder binder) throws SQLException {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getReadConnection();
+            pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            binder.bind(pstmt);
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            log.error("db error", e);
+            close(con, pstmt, rs);
+            throw e;
+        }
+
+        Connection streamCon = con;
+        PreparedStatement streamPstmt = pstmt;
+        ResultSet streamRs = rs;
+        Spliterator<Member> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Member> action) {
+                try {
+                    if (!streamRs.next()) {
+                        return false;
+                    }
+                    action.accept(mapMember(streamRs));
+                    return true;
+                } catch (SQLException e) {
+                    log.error("db error", e);
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> close(streamCon, streamPstmt, streamRs));
+    }
+
+    /**
+     * 조회 sql 의 from 절 - member_id, money, version 컬럼을 가진 테이블 또는 서브쿼리
+     * findByIdForUpdate 는 for update 때문에 항상 member 테이블을 직접 읽는다.
+     */
+    protected String memberSource() {
+        return "member";
+    }
+
+    protected Member mapMember(ResultSet rs) throws SQLException {
+        Member member = new Member();
+        member.setMemberId(rs.getString("member_id"));
+        member.setMoney(rs.getInt("money"));
+        member.setVersion(rs.getLong("version"));
+        return member;
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder {
+        void bind(PreparedStatement pstmt) throws SQLException;
+    }
+
+    /**
+     * 출금 - 조회 없이 상대값으로 차감
+     * 잔액 조건(money >= ?)을 같은 update 문에서 검사하므로 read-modify-write 사이의 lost update 가 없다.
+     */
+    public void withdraw(String memberId, int money) throws SQLException {
+        String sql = "update member set money=money-?, version=version+1 where member_id=? and money>=?";
+        int resultSize = executeDelta("member.withdraw", sql, memberId, money, true);
+        if (resultSize == 0) {
+            throw new IllegalStateException("insufficient money or member not found memberId=" + memberId);
+        }
+    }
+
+    /**
+     * 입금 - 조회 없이 상대값으로 증가
+     */
+    public void deposit(String memberId, int money) throws SQLException {
+        String sql = "update member set money=money+?, version=version+1 where member_id=?";
+        int resultSize = executeDelta("member.deposit", sql, memberId, money, false);
+        if (resultSize == 0) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+    }
+
+    private int executeDelta(String sqlId, String sql, String memberId, int money, boolean guarded) throws SQLException {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        StatementEvent event = StatementEvent.start(sqlId, memberId);
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            if (guarded) {
+                pstmt.setInt(3, money);
+            }
+            int resultSize = pstmt.executeUpdate();
+            event.success(resultSize);
+            return resultSize;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+            event.finish();
+        } }
+
+    /**
+     * JDBC 배치 insert - batchSize 마다 executeBatch
+     * 트랜잭션 동기화된 커넥션을 사용하므로 서비스 트랜잭션 안에서 호출하면 한번에 커밋/롤백된다.
+     * @return 입력 순서대로 row 별 처리 결과 (update count)
+     */
+    public int[] saveAll(Collection<Member> members) throws SQLException {
+        String sql = "insert into member(member_id, money) values(?, ?)";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            int[] result = new int[members.size()];
+            int count = 0;
+            int flushed = 0;
+            for (Member member : members) {
+                pstmt.setString(1, member.getMemberId());
+                pstmt.setInt(2, member.getMoney());
+                pstmt.addBatch();
+                if (++count % batchSize == 0) {
+                    flushed = executeBatch(pstmt, result, flushed);
+                }
+            }
+            executeBatch(pstmt, result, flushed);
+            return result;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    /**
+     * JDBC 배치 update - memberId 별 money 를 batchSize 단위로 반영
+     * @return moneyByMemberId 순회 순서대로 row 별 처리 결과 (0 이면 해당 회원 없음)
+     */
+    public int[] updateAll(Map<String, Integer> moneyByMemberId) throws SQLException {
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            int[] result = new int[moneyByMemberId.size()];
+            int count = 0;
+            int flushed = 0;
+            for (Map.Entry<String, Integer> entry : moneyByMemberId.entrySet()) {
+                pstmt.setInt(1, entry.getValue());
+                pstmt.setString(2, entry.getKey());
+                pstmt.addBatch();
+                if (++count % batchSize == 0) {
+                    flushed = executeBatch(pstmt, result, flushed);
+                }
+            }
+            executeBatch(pstmt, result, flushed);
+            return result;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    /**
+     * 낙관적 락 update - 조회한 version 이 그대로일 때만 수정
+     * @return false 면 다른 트랜잭션이 먼저 수정한 것 (version 충돌)
+     */
+    public boolean updateWithVersion(String memberId, int money, long version) throws SQLException {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        StatementEvent event = StatementEvent.start("member.updateWithVersion", memberId);
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            pstmt.setLong(3, version);
+            int resultSize = pstmt.executeUpdate();
+            event.success(resultSize);
+            return resultSize == 1;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+            event.finish();
+        } }
+
+    /**
+     * JDBC 배치 상대값 update - memberId 별 증감액(delta)을 money 에 더한다. (잔액 조건 없음)
+     * @return deltaByMemberId 순회 순서대로 row 별 처리 결과 (0 이면 해당 회원 없음)
+     */
+    public int[] applyDeltas(Map<String, Integer> deltaByMemberId) throws SQLException {
+        String sql = "update member set money=money+?, version=version+1 where member_id=?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            int[] result = new int[deltaByMemberId.size()];
+            int count = 0;
+            int flushed = 0;
+            for (Map.Entry<String, Integer> entry : deltaByMemberId.entrySet()) {
+                pstmt.setInt(1, entry.getValue());
+                pstmt.setString(2, entry.getKey());
+                pstmt.addBatch();
+                if (++count % batchSize == 0) {
+                    flushed = executeBatch(pstmt, result, flushed);
+                }
+            }
+            executeBatch(pstmt, result, flushed);
+            return result;
         } catch (SQLException e) {
             log.error("db error", e);
             throw e;
@@ -86,26 +547,42 @@ public class MemberRepositoryV3 {
         String sql = "delete from member where member_id=?";
         Connection con = null;
         PreparedStatement pstmt = null;
+        StatementEvent event = StatementEvent.start("member.delete", memberId);
         try {
             con = getConnection();
             pstmt = con.prepareStatement(sql);
             pstmt.setString(1, memberId);
-            pstmt.executeUpdate();
+            event.success(pstmt.executeUpdate());
         } catch (SQLException e) {
             log.error("db error", e);
             throw e;
         } finally {
             close(con, pstmt, null);
+            event.finish();
         } }
-    private void close(Connection con, Statement stmt, ResultSet rs) {
+    private int executeBatch(PreparedStatement pstmt, int[] result, int offset) throws SQLException {
+        int[] counts = pstmt.executeBatch();
+        System.arraycopy(counts, 0, result, offset, counts.length);
+        return offset + counts.length;
+    }
+    protected void close(Connection con, Statement stmt, ResultSet rs) {
         JdbcUtils.closeResultSet(rs);
         JdbcUtils.closeStatement(stmt);
         // 주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils를 사용해야한다.
         DataSourceUtils.releaseConnection(con,dataSource);
     }
-    private Connection getConnection() throws SQLException {
+    protected Connection getConnection() throws SQLException {
         //주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils를 사용해야한다.
         Connection con = DataSourceUtils.getConnection(dataSource);
-        log.info("get connection={} class={}", con, con.getClass());
+        log.debug("get connection={} class={}", con, con.getClass());
         return con;
+    }
+
+    /**
+     * 조회용 커넥션 - 트랜잭션 안이면 트랜잭션 커넥션을 그대로 쓴다. (읽기 전용 힌트는 새 커넥션을 얻을 때만 의미가 있다)
+     */
+    protected Connection getReadConnection() throws SQLException {
+        try (ReadWriteRoutingDataSource.Hint hint = ReadWriteRoutingDataSource.readOnly()) {
+            return getConnection();
+        }
     } }
@@ -0,0 +1,132 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.ShardTransfer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 샤드 간 이체 기록 - 샤드마다 하나씩
+ *
+ * create table shard_transfer (
+ *     transfer_id varchar(36) primary key, from_id varchar(10) not null, to_id varchar(10) not null,
+ *     money integer not null, status varchar(10) not null)
+ * resources/schema-shard-transfer.sql
+ */
+@Slf4j
+public class ShardTransferRepository {
+    private final DataSource dataSource;
+    public ShardTransferRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public ShardTransfer save(ShardTransfer transfer) throws SQLException {
+        String sql = "insert into shard_transfer(transfer_id, from_id, to_id, money, status) values(?, ?, ?, ?, ?)";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, transfer.getTransferId());
+            pstmt.setString(2, transfer.getFromId());
+            pstmt.setString(3, transfer.getToId());
+            pstmt.setInt(4, transfer.getMoney());
+            pstmt.setString(5, transfer.getStatus());
+            pstmt.executeUpdate();
+            return transfer;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    public Optional<ShardTransfer> findById(String transferId) throws SQLException {
+        String sql = "select * from shard_transfer where transfer_id = ?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, transferId);
+            rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return Optional.of(mapTransfer(rs));
+            } else {
+                return Optional.empty();
+            }
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        } }
+
+    public List<ShardTransfer> findByStatus(String status) throws SQLException {
+        String sql = "select * from shard_transfer where status = ?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, status);
+            rs = pstmt.executeQuery();
+            List<ShardTransfer> result = new ArrayList<>();
+            while (rs.next()) {
+                result.add(mapTransfer(rs));
+            }
+            return result;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        } }
+
+    /**
+     * 상태 변경 - 현재 상태가 expected 일 때만 바꾼다.
+     * @return 바꿨으면 true
+     */
+    public boolean updateStatus(String transferId, String expected, String status) throws SQLException {
+        String sql = "update shard_transfer set status=? where transfer_id=? and status=?";
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, status);
+            pstmt.setString(2, transferId);
+            pstmt.setString(3, expected);
+            return pstmt.executeUpdate() == 1;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        } }
+
+    private ShardTransfer mapTransfer(ResultSet rs) throws SQLException {
+        return new ShardTransfer(rs.getString("transfer_id"), rs.getString("from_id"), rs.getString("to_id"),
+                rs.getInt("money"), rs.getString("status"));
+    }
+
+    private void close(Connection con, Statement stmt, ResultSet rs) {
+        JdbcUtils.closeResultSet(rs);
+        JdbcUtils.closeStatement(stmt);
+        DataSourceUtils.releaseConnection(con, dataSource);
+    }
+    private Connection getConnection() throws SQLException {
+        return DataSourceUtils.getConnection(dataSource);
+    } }
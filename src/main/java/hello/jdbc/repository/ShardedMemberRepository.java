@@ -0,0 +1,373 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 샤딩 - memberId 의 일관된 해시로 고른 DataSource 하나에 회원을 저장한다.
+ * 샤드마다 MemberRepositoryV3 를 하나씩 두고 같은 연산을 제공한다.
+ * - 회원 한 명 대상 연산 : 호출 스레드에서 해당 샤드로 보낸다. 그 샤드 DataSource 의 트랜잭션 안이면 참여한다.
+ * - 여러 샤드에 걸친 조회/배치 : 샤드별로 나눠 병렬 실행하고 결과를 합친다.
+ *   다른 스레드에서 실행되므로 호출자의 트랜잭션에 참여하지 않는다. (샤드가 하나면 호출 스레드에서 실행)
+ * - 스트리밍 조회(findAll, findByMoneyRange) : 샤드마다 정렬된 커서를 열고 memberId 순서로 병합한다.
+ *   샤드당 한 건씩만 메모리에 두므로 MemberRepositoryV3 처럼 결과 크기와 상관없이 메모리가 일정하다.
+ *   샤드 수만큼 커넥션을 잡으므로 반드시 try-with-resources 로 사용한다.
+ * 샤드 간 이체는 ShardedMemberService 를 사용한다.
+ */
+@Slf4j
+public class ShardedMemberRepository implements AutoCloseable {
+
+    private final List<DataSource> dataSources;
+    private final List<MemberRepositoryV3> shards;
+    private final ConsistentHash consistentHash;
+    private final ExecutorService executor;
+
+    public ShardedMemberRepository(List<DataSource> dataSources) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("at least one shard is required");
+        }
+        this.dataSources = List.copyOf(dataSources);
+        this.shards = dataSources.stream().map(MemberRepositoryV3::new).collect(Collectors.toList());
+        this.consistentHash = new ConsistentHash(dataSources.size());
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(dataSources.size(), r -> {
+            Thread thread = new Thread(r, "shard-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int shardOf(String memberId) {
+        return consistentHash.shardOf(memberId);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public DataSource getDataSource(int shard) {
+        return dataSources.get(shard);
+    }
+
+    public MemberRepositoryV3 getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    private MemberRepositoryV3 shardFor(String memberId) {
+        return shards.get(shardOf(memberId));
+    }
+
+    public Member save(Member member) throws SQLException {
+        return shardFor(member.getMemberId()).save(member);
+    }
+
+    public Member findById(String memberId) throws SQLException {
+        return findOptionalById(memberId)
+                .orElseThrow(() -> new NoSuchElementException("member not found memberId=" + memberId));
+    }
+
+    public Optional<Member> findOptionalById(String memberId) throws SQLException {
+        return shardFor(memberId).findOptionalById(memberId);
+    }
+
+    public Member findByIdForUpdate(String memberId) throws SQLException {
+        return shardFor(memberId).findByIdForUpdate(memberId);
+    }
+
+    public void update(String memberId, int money) throws SQLException {
+        shardFor(memberId).update(memberId, money);
+    }
+
+    public boolean updateWithVersion(String memberId, int money, long version) throws SQLException {
+        return shardFor(memberId).updateWithVersion(memberId, money, version);
+    }
+
+    public void withdraw(String memberId, int money) throws SQLException {
+        shardFor(memberId).withdraw(memberId, money);
+    }
+
+    public void deposit(String memberId, int money) throws SQLException {
+        shardFor(memberId).deposit(memberId, money);
+    }
+
+    public void delete(String memberId) throws SQLException {
+        shardFor(memberId).delete(memberId);
+    }
+
+    /**
+     * 여러 회원 조회 - 샤드별 IN 절 조회를 병렬로
+     */
+    public Map<String, Member> findByIds(Collection<String> memberIds) throws SQLException {
+        Map<Integer, List<String>> idsByShard = memberIds.stream()
+                .distinct()
+                .collect(Collectors.groupingBy(this::shardOf));
+        Map<String, Member> result = new HashMap<>();
+        for (Map<String, Member> members : parallel(idsByShard, (shard, ids) -> shards.get(shard).findByIds(ids))) {
+            result.putAll(members);
+        }
+        return result;
+    }
+
+    /**
+     * 배치 저장 - 샤드별 배치를 병렬로
+     * @return 입력 순서대로 row 별 처리 결과
+     */
+    public int[] saveAll(Collection<Member> members) throws SQLException {
+        List<Member> list = new ArrayList<>(members);
+        Map<Integer, List<Integer>> positionsByShard = positionsByShard(list.size(), i -> list.get(i).getMemberId());
+        return scatter(list.size(), positionsByShard, (shard, positions) -> shards.get(shard).saveAll(
+                positions.stream().map(list::get).collect(Collectors.toList())));
+    }
+
+    /**
+     * 배치 수정 - 샤드별 배치를 병렬로
+     * @return 입력(Map 순회) 순서대로 row 별 처리 결과
+     */
+    public int[] updateAll(Map<String, Integer> moneyByMemberId) throws SQLException {
+        return applyByShard(moneyByMemberId, MemberRepositoryV3::updateAll);
+    }
+
+    /**
+     * 배치 증감 - 샤드별 배치를 병렬로
+     * @return 입력(Map 순회) 순서대로 row 별 처리 결과
+     */
+    public int[] applyDeltas(Map<String, Integer> deltaByMemberId) throws SQLException {
+        return applyByShard(deltaByMemberId, MemberRepositoryV3::applyDeltas);
+    }
+
+    private int[] applyByShard(Map<String, Integer> valueByMemberId, BatchOperation operation) throws SQLException {
+        List<String> memberIds = new ArrayList<>(valueByMemberId.keySet());
+        Map<Integer, List<Integer>> positionsByShard = positionsByShard(memberIds.size(), memberIds::get);
+        return scatter(memberIds.size(), positionsByShard, (shard, positions) -> {
+            Map<String, Integer> shardValues = new LinkedHashMap<>();
+            for (int position : positions) {
+                String memberId = memberIds.get(position);
+                shardValues.put(memberId, valueByMemberId.get(memberId));
+            }
+            return operation.apply(shards.get(shard), shardValues);
+        });
+    }
+
+    /**
+     * 전체 회원 스트리밍 조회 - memberId 순서 (MemberRepositoryV3 와 같은 순서)
+     */
+    public Stream<Member> findAll() throws SQLException {
+        return merge(shard -> shards.get(shard).findAll());
+    }
+
+    /**
+     * 범위 스트리밍 조회 - memberId 순서 (MemberRepositoryV3 와 같은 순서)
+     */
+    public Stream<Member> findByMoneyRange(int minMoney, int maxMoney) throws SQLException {
+        return merge(shard -> shards.get(shard).findByMoneyRange(minMoney, maxMoney));
+    }
+
+    /**
+     * 샤드별 스트림을 열고 memberId 순서로 병합 - 다음 원소가 필요할 때 가장 작은 샤드 머리만 꺼낸다.
+     */
+    private Stream<Member> merge(ShardStream opener) throws SQLException {
+        List<Stream<Member>> streams = new ArrayList<>(shards.size());
+        try {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                streams.add(opener.open(shard));
+            }
+        } catch (SQLException | RuntimeException e) {
+            closeAll(streams);
+            throw e;
+        }
+
+        PriorityQueue<MergeHead> heads = new PriorityQueue<>(streams.size(),
+                Comparator.comparing(head -> head.member.getMemberId()));
+        Spliterator<Member> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean started;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Member> action) {
+                if (!started) {
+                    started = true;
+                    for (Stream<Member> stream : streams) {
+                        MergeHead.next(stream.iterator(), heads);
+                    }
+                }
+                MergeHead head = heads.poll();
+                if (head == null) {
+                    return false;
+                }
+                action.accept(head.member);
+                MergeHead.next(head.iterator, heads);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> closeAll(streams));
+    }
+
+    private static void closeAll(List<Stream<Member>> streams) {
+        for (Stream<Member> stream : streams) {
+            try {
+                stream.close();
+            } catch (RuntimeException e) {
+                log.info("error", e);
+            }
+        }
+    }
+
+    /**
+     * 키셋 페이지 - 샤드마다 limit 개씩 병렬로 가져와 memberId 순서로 합친 뒤 limit 개만 남긴다.
+     */
+    public List<Member> findPageAfter(String lastMemberId, int limit) throws SQLException {
+        List<List<Member>> results = parallel(allShards(),
+                (shard, unused) -> shards.get(shard).findPageAfter(lastMemberId, limit));
+        return results.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(Member::getMemberId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 키셋 페이지 - (money, memberId) 순서, 샤드마다 limit 개씩 병렬로 가져와 합친 뒤 limit 개만 남긴다.
+     * @param lastMemberId 이전 페이지의 마지막 memberId, 첫 페이지는 null (lastMoney 무시)
+     */
+    public List<Member> findPageAfterMoney(int lastMoney, String lastMemberId, int limit) throws SQLException {
+        List<List<Member>> results = parallel(allShards(),
+                (shard, unused) -> shards.get(shard).findPageAfterMoney(lastMoney, lastMemberId, limit));
+        return results.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingInt(Member::getMoney).thenComparing(Member::getMemberId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private Map<Integer, List<Integer>> allShards() {
+        Map<Integer, List<Integer>> all = new LinkedHashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            all.put(shard, List.of());
+        }
+        return all;
+    }
+
+    private Map<Integer, List<Integer>> positionsByShard(int size, PositionKey key) {
+        Map<Integer, List<Integer>> positionsByShard = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            positionsByShard.computeIfAbsent(shardOf(key.memberId(i)), k -> new ArrayList<>()).add(i);
+        }
+        return positionsByShard;
+    }
+
+    /**
+     * 샤드별 결과(int[])를 입력 위치로 되돌려 놓는다.
+     */
+    private int[] scatter(int size, Map<Integer, List<Integer>> positionsByShard,
+                          ShardTask<List<Integer>, int[]> task) throws SQLException {
+        List<Integer> shardOrder = new ArrayList<>(positionsByShard.keySet());
+        List<int[]> shardResults = parallel(positionsByShard, task);
+        int[] result = new int[size];
+        for (int i = 0; i < shardOrder.size(); i++) {
+            List<Integer> positions = positionsByShard.get(shardOrder.get(i));
+            int[] counts = shardResults.get(i);
+            for (int j = 0; j < positions.size(); j++) {
+                result[positions.get(j)] = counts[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 샤드별 작업을 병렬 실행 - 결과는 Map 순회 순서, 샤드가 하나면 호출 스레드에서 실행
+     */
+    private <A, R> List<R> parallel(Map<Integer, A> argsByShard, ShardTask<A, R> task) throws SQLException {
+        if (argsByShard.size() == 1) {
+            Map.Entry<Integer, A> entry = argsByShard.entrySet().iterator().next();
+            return List.of(task.run(entry.getKey(), entry.getValue()));
+        }
+        List<Future<R>> futures = new ArrayList<>(argsByShard.size());
+        for (Map.Entry<Integer, A> entry : argsByShard.entrySet()) {
+            futures.add(executor.submit(() -> task.run(entry.getKey(), entry.getValue())));
+        }
+        List<R> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private interface ShardTask<A, R> {
+        R run(int shard, A arg) throws SQLException;
+    }
+
+    private interface BatchOperation {
+        int[] apply(MemberRepositoryV3 repository, Map<String, Integer> values) throws SQLException;
+    }
+
+    private interface PositionKey {
+        String memberId(int position);
+    }
+
+    private interface ShardStream {
+        Stream<Member> open(int shard) throws SQLException;
+    }
+
+    private static class MergeHead {
+        private final Member member;
+        private final Iterator<Member> iterator;
+
+        private MergeHead(Member member, Iterator<Member> iterator) {
+            this.member = member;
+            this.iterator = iterator;
+        }
+
+        static void next(Iterator<Member> iterator, PriorityQueue<MergeHead> heads) {
+            if (iterator.hasNext()) {
+                heads.add(new MergeHead(iterator.next(), iterator));
+            }
+        }
+    }
+}
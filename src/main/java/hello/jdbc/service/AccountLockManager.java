@@ -0,0 +1,94 @@
+package hello.jdbc.service;
+
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JVM 안에서 회원별로 이체를 줄 세우는 스트라이프 락
+ * memberId 해시로 stripes 개의 공정(fair) 락 중 하나를 고른다.
+ * 여러 회원을 잠글 때는 항상 stripe 번호 순서로 잠그므로 서로 반대 방향 이체끼리 데드락이 없다.
+ * 대기는 메모리에서 하므로 DB 커넥션을 잡지 않는다.
+ */
+public class AccountLockManager {
+
+    private final ReentrantLock[] locks;
+    private final long timeoutNanos;
+
+    public AccountLockManager(int stripes, long timeout, TimeUnit unit) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive stripes=" + stripes);
+        }
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock(true);
+        }
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * 모든 memberId 의 락을 잡는다. timeout 안에 못 잡으면 잡았던 락을 풀고 CannotAcquireLockException
+     * 반환된 Locked 를 close 하면 락이 풀린다. (try-with-resources) 두 번 close 해도 한 번만 푼다.
+     */
+    public Locked lock(String... memberIds) {
+        int[] stripes = Arrays.stream(memberIds)
+                .mapToInt(this::stripe)
+                .sorted()
+                .distinct()
+                .toArray();
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        int acquired = 0;
+        try {
+            for (int stripe : stripes) {
+                long remaining = deadline - System.nanoTime();
+                if (!locks[stripe].tryLock(Math.max(remaining, 0), TimeUnit.NANOSECONDS)) {
+                    throw new CannotAcquireLockException("lock timeout memberIds=" + Arrays.toString(memberIds));
+                }
+                acquired++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unlock(stripes, acquired);
+            throw new CannotAcquireLockException("interrupted memberIds=" + Arrays.toString(memberIds), e);
+        } catch (RuntimeException e) {
+            unlock(stripes, acquired);
+            throw e;
+        }
+        return new StripeLocked(stripes);
+    }
+
+    private int stripe(String memberId) {
+        return Math.floorMod(memberId.hashCode(), locks.length);
+    }
+
+    private void unlock(int[] stripes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    private class StripeLocked implements Locked {
+        private final int[] stripes;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        StripeLocked(int[] stripes) {
+            this.stripes = stripes;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                unlock(stripes, stripes.length);
+            }
+        }
+    }
+
+    public interface Locked extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
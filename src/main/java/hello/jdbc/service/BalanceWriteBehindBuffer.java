@@ -0,0 +1,465 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.JournalCheckpointRepository;
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 잔액 증감 write-behind 버퍼
+ * - 회원별 증감액을 메모리에서 합산(+5, -3, +10 -> +12)하고 flushInterval 마다 또는 flushSize 건이 쌓이면
+ *   트랜잭션 하나로 배치 update 한다.
+ * - 쌓인 건수가 maxPending 을 넘으면 add 가 대기한다. (backpressure)
+ * - add 한 증감은 먼저 로컬 journal 파일에 append 한다. 비정상 종료 후 재시작하면 남은 journal 을 다시 반영하고,
+ *   반영한 journal 번호를 같은 트랜잭션에서 기록하므로 두번 반영되지 않는다.
+ * journal 은 flush 할 때 fsync 하므로 OS 장애 시 최대 flushInterval 만큼의 증감이 유실될 수 있다.
+ * 잔액 조건 없이 더하므로 입금처럼 실패하지 않는 증감에만 사용한다.
+ * 반영할 수 없는 증감은 dead letter 로 남긴다. (error 로그, 재시작해도 다시 반영하지 않는다)
+ * - int 범위를 넘는 합산처럼 다시 해도 실패하는 배치, MAX_APPLY_ATTEMPTS 번 실패한 배치 : journal 파일 전체 (dead-journal-{id}.log)
+ * - 없는 회원의 증감 : 그 회원 줄만 (dead-missing-{id}.log, 나머지 회원은 반영)
+ * 디스크에 남은 가장 오래된 journal 보다 앞선 checkpoint 는 더 필요 없으므로 flush 후 지운다.
+ */
+@Slf4j
+public class BalanceWriteBehindBuffer implements AutoCloseable {
+
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+    private static final String DEAD_LETTER_PREFIX = "dead-";
+    private static final String DEAD_MISSING_PREFIX = "dead-missing-";
+    // 맨 앞 배치가 이만큼 연속 실패하면 dead letter 로 보내고 다음 배치로 넘어간다.
+    public static final int MAX_APPLY_ATTEMPTS = 10;
+
+    private final TransactionTemplate txTemplate;
+    private final MemberRepositoryV3 memberRepository;
+    private final JournalCheckpointRepository checkpointRepository;
+    private final Path journalDir;
+    private final int flushSize;
+    private final long acquireTimeoutMillis;
+
+    private final Semaphore pendingPermits;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong journalSequence;
+    private final LongAdder deadLetterCount = new LongAdder();
+    // add 는 read lock, flush 시 버퍼 교체는 write lock
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private ConcurrentHashMap<String, LongAdder> deltas = new ConcurrentHashMap<>();
+    private Journal journal;
+
+    // 반영에 실패한 배치 - 다음 flush 에서 먼저 다시 시도
+    private final Deque<Batch> failedBatches = new ArrayDeque<>();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    public BalanceWriteBehindBuffer(PlatformTransactionManager transactionManager, MemberRepositoryV3 memberRepository,
+                                    JournalCheckpointRepository checkpointRepository, Path journalDir,
+                                    long flushIntervalMillis, int flushSize, int maxPending, long acquireTimeoutMillis) {
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.memberRepository = memberRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.journalDir = journalDir;
+        this.flushSize = flushSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.pendingPermits = new Semaphore(maxPending);
+
+        try {
+            Files.createDirectories(journalDir);
+            List<Path> journals = listJournals();
+            long lastId = journals.isEmpty() ? 0 : journalId(journals.get(journals.size() - 1));
+            this.journalSequence = new AtomicLong(Math.max(lastId, System.currentTimeMillis() * 1000));
+            recover(journals);
+            this.journal = Journal.open(journalDir, journalSequence.incrementAndGet());
+            pruneCheckpoints();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "balance-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 증감 추가 - journal 에 기록한 뒤 반환한다. 버퍼가 가득 차면 acquireTimeout 까지 대기 후 IllegalStateException
+     */
+    public void add(String memberId, int delta) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("write-behind buffer is closed");
+        }
+        if (!pendingPermits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("write-behind buffer is full");
+        }
+        int pending;
+        swapLock.readLock().lock();
+        try {
+            journal.append(memberId, delta);
+            deltas.computeIfAbsent(memberId, k -> new LongAdder()).add(delta);
+            // swap 이 건수와 버퍼를 같이 가져가도록 read lock 안에서 센다.
+            pending = pendingCount.incrementAndGet();
+        } catch (IOException e) {
+            pendingPermits.release();
+            throw new UncheckedIOException(e);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        if (pending >= flushSize) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * 쌓인 증감을 트랜잭션 하나로 반영
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Batch batch = swap();
+            if (batch != null) {
+                failedBatches.addLast(batch);
+            }
+            while (!failedBatches.isEmpty()) {
+                Batch next = failedBatches.peekFirst();
+                try {
+                    apply(next.journalId, next.netDeltas);
+                    deleteJournal(next.journalPath);
+                } catch (RuntimeException e) {
+                    next.attempts++;
+                    if (!isPermanent(e) && next.attempts < MAX_APPLY_ATTEMPTS) {
+                        throw e;
+                    }
+                    deadLetter(next.journalId, next.journalPath, next.attempts, e);
+                }
+                failedBatches.pollFirst();
+                pendingPermits.release(next.count);
+            }
+            pruneCheckpoints();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("write-behind flush error, retry next flush", e);
+        }
+    }
+
+    private Batch swap() {
+        Map<String, LongAdder> swapped;
+        Journal swappedJournal;
+        int count;
+        swapLock.writeLock().lock();
+        try {
+            count = pendingCount.getAndSet(0);
+            if (count == 0) {
+                return null;
+            }
+            swapped = deltas;
+            swappedJournal = journal;
+            deltas = new ConcurrentHashMap<>();
+            journal = Journal.open(journalDir, journalSequence.incrementAndGet());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        try {
+            swappedJournal.close(); // fsync
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<String, Long> net = new HashMap<>();
+        swapped.forEach((memberId, delta) -> {
+            long sum = delta.sum();
+            if (sum != 0) {
+                net.put(memberId, sum);
+            }
+        });
+        return new Batch(swappedJournal.id, swappedJournal.path, net, count);
+    }
+
+    /**
+     * @throws ArithmeticException 합산이 int 범위를 넘으면 (다시 해도 실패)
+     */
+    private void apply(long journalId, Map<String, Long> netDeltas) {
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        netDeltas.forEach((memberId, sum) -> deltas.put(memberId, Math.toIntExact(sum)));
+        Map<String, Integer> missing = txTemplate.execute(status -> {
+            try {
+                if (checkpointRepository.isApplied(journalId)) {
+                    log.info("journal already applied journalId={}", journalId);
+                    return Map.of();
+                }
+                int[] result = memberRepository.applyDeltas(deltas);
+                Map<String, Integer> missed = new LinkedHashMap<>();
+                int i = 0;
+                for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+                    if (result[i++] == 0) {
+                        missed.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                if (!missed.isEmpty()) {
+                    // 커밋 전에 파일부터 남긴다. 커밋이 실패해서 다시 반영하면 같은 파일을 덮어쓴다.
+                    writeDeadLetter(journalId, missed);
+                }
+                checkpointRepository.markApplied(journalId);
+                return missed;
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // 커밋된 뒤에만 센다. 롤백 후 다시 반영하는 배치를 두번 세지 않는다.
+        if (!missing.isEmpty()) {
+            deadLetterCount.increment();
+            log.error("write-behind delta for missing members moved to dead letter journalId={} members={} file={}",
+                    journalId, missing.keySet(), deadMissingPath(journalId));
+        }
+        log.info("write-behind applied journalId={} members={}", journalId, netDeltas.size());
+    }
+
+    private void recover(List<Path> journals) throws IOException {
+        for (Path path : journals) {
+            long journalId = journalId(path);
+            Map<String, Long> net = Journal.read(path);
+            log.info("recover journal={} members={}", path, net.size());
+            try {
+                apply(journalId, net);
+                Files.delete(path);
+            } catch (RuntimeException e) {
+                if (!isPermanent(e)) {
+                    throw e;
+                }
+                deadLetter(journalId, path, 1, e);
+            }
+        }
+    }
+
+    // 다시 시도해도 같은 결과 - int 범위를 넘는 합산
+    private static boolean isPermanent(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ArithmeticException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 배치 전체를 dead letter 로 - journal 파일 이름을 바꿔서 재시작할 때 다시 반영하지 않게 한다.
+     */
+    private void deadLetter(long journalId, Path journalPath, int attempts, RuntimeException cause) {
+        deadLetterCount.increment();
+        Path deadPath = journalDir.resolve(DEAD_LETTER_PREFIX + journalPath.getFileName());
+        try {
+            Files.move(journalPath, deadPath, StandardCopyOption.REPLACE_EXISTING);
+            log.error("write-behind batch moved to dead letter journalId={} attempts={} file={}",
+                    journalId, attempts, deadPath, cause);
+        } catch (IOException e) {
+            // 이름을 못 바꾸면 재시작할 때 다시 시도한다.
+            log.error("write-behind batch dropped journalId={} attempts={} journal={} (rename failed: {})",
+                    journalId, attempts, journalPath, e.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 없는 회원의 증감만 dead letter 로 - 나머지 회원은 반영한다.
+     */
+    private void writeDeadLetter(long journalId, Map<String, Integer> missing) {
+        Path deadPath = deadMissingPath(journalId);
+        StringBuilder content = new StringBuilder();
+        missing.forEach((memberId, delta) -> content.append(memberId).append('\t').append(delta).append('\n'));
+        try {
+            Files.write(deadPath, content.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // journal 전체를 옮기는 dead-journal-{id}.log 와 겹치지 않는 이름
+    private Path deadMissingPath(long journalId) {
+        return journalDir.resolve(DEAD_MISSING_PREFIX + journalId + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * 디스크에 남은 가장 오래된 journal 보다 앞선 checkpoint 삭제
+     * - 반영 후 파일 삭제에 실패한 journal 은 디스크에 남아 있으므로 그 checkpoint 는 지우지 않는다.
+     */
+    private void pruneCheckpoints() {
+        try {
+            List<Path> journals = listJournals();
+            long oldestId = journals.isEmpty() ? journal.id : journalId(journals.get(0));
+            int deleted = checkpointRepository.deleteBefore(oldestId);
+            if (deleted > 0) {
+                log.info("journal checkpoints pruned before journalId={} count={}", oldestId, deleted);
+            }
+        } catch (IOException | SQLException e) {
+            // 다음 flush 에서 다시 지운다.
+            log.info("error", e);
+        }
+    }
+
+    /**
+     * dead letter 로 보낸 배치/회원 증감 묶음 수
+     */
+    public long getDeadLetterCount() {
+        return deadLetterCount.sum();
+    }
+
+    private List<Path> listJournals() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX);
+                    })
+                    .sorted((a, b) -> Long.compare(journalId(a), journalId(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long journalId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length()));
+    }
+
+    private static void deleteJournal(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // 이미 반영 기록이 있으므로 재시작 시 건너뛴다.
+            log.info("error", e);
+        }
+    }
+
+    /**
+     * 종료 시 남은 증감 반영 - JVM 종료 훅으로도 등록할 수 있다.
+     */
+    public void registerShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "balance-write-behind-shutdown"));
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (flushLock) {
+            try {
+                journal.close();
+                if (pendingCount.get() == 0) {
+                    Files.deleteIfExists(journal.path);
+                }
+            } catch (IOException e) {
+                log.info("error", e);
+            }
+        }
+    }
+
+    private static class Batch {
+        private final long journalId;
+        private final Path journalPath;
+        private final Map<String, Long> netDeltas;
+        private final int count;
+        private int attempts; // flushLock 안에서만 접근
+
+        Batch(long journalId, Path journalPath, Map<String, Long> netDeltas, int count) {
+            this.journalId = journalId;
+            this.journalPath = journalPath;
+            this.netDeltas = netDeltas;
+            this.count = count;
+        }
+    }
+
+    /**
+     * append-only journal - 한 줄에 "memberId\tdelta"
+     */
+    private static class Journal {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+
+        private Journal(long id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        static Journal open(Path dir, long id) throws IOException {
+            Path path = dir.resolve(JOURNAL_PREFIX + id + JOURNAL_SUFFIX);
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            return new Journal(id, path, channel);
+        }
+
+        synchronized void append(String memberId, int delta) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap((memberId + "\t" + delta + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        synchronized void close() throws IOException {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        }
+
+        /**
+         * 비정상 종료로 마지막 줄이 잘렸으면 그 줄은 버린다. (add 가 반환되기 전이므로 반영되지 않은 증감)
+         */
+        static Map<String, Long> read(Path path) throws IOException {
+            String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            int end = content.lastIndexOf('\n');
+            Map<String, Long> sums = new HashMap<>();
+            if (end >= 0) {
+                for (String line : content.substring(0, end).split("\n")) {
+                    int tab = line.indexOf('\t');
+                    sums.merge(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)), Long::sum);
+                }
+            }
+            sums.values().removeIf(sum -> sum == 0);
+            return sums;
+        }
+    }
+}
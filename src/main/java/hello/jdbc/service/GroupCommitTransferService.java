@@ -0,0 +1,195 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  트랜잭션 - 그룹 커밋
+ *  동시에 들어온 이체 요청을 큐에 모아서 최대 maxBatchSize 개(또는 maxWaitMillis 동안 들어온 요청)를
+ *  하나의 트랜잭션으로 커밋한다. 커밋 비용을 여러 이체가 나눠 낸다.
+ *  묶음 중 하나라도 실패하면 묶음 전체를 롤백하고 하나씩 개별 트랜잭션으로 다시 처리한다.
+ *  이체를 모두 실행한 뒤 커밋에서 실패하면 서버에서 커밋됐는지 알 수 없으므로 다시 처리하지 않고
+ *  묶음의 모든 요청을 결과 불명(commit outcome unknown)으로 실패시킨다. (두 번 이체하지 않는다)
+ * */
+
+@Slf4j
+public class GroupCommitTransferService implements AutoCloseable {
+
+    private final TransactionTemplate txTemplate;
+    private final MemberRepositoryV3 memberRepository;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final BlockingQueue<TransferRequest> queue;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public GroupCommitTransferService(PlatformTransactionManager transactionManager, MemberRepositoryV3 memberRepository,
+                                      int maxBatchSize, long maxWaitMillis, int queueCapacity) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive maxBatchSize=" + maxBatchSize);
+        }
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.memberRepository = memberRepository;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.worker = new Thread(this::run, "group-commit-transfer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 큐가 가득 차면 바로 실패한 future 를 돌려준다.
+     */
+    public CompletableFuture<Void> accountTransfer(String fromId, String toId, int money) {
+        TransferRequest request = new TransferRequest(fromId, toId, money);
+        if (!running) {
+            request.future.completeExceptionally(new IllegalStateException("transfer service is closed"));
+        } else if (!queue.offer(request)) {
+            request.future.completeExceptionally(new IllegalStateException("transfer queue is full"));
+        } else if (!running && queue.remove(request)) {
+            // offer 하는 사이에 close 되어 worker 와 failPending 이 이미 지나갔을 수 있다.
+            // 큐에서 꺼내지 못했다면 worker 나 failPending 이 가져가서 완료한다.
+            request.future.completeExceptionally(new IllegalStateException("transfer service is closed"));
+        }
+        return request.future;
+    }
+
+    private void run() {
+        List<TransferRequest> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                TransferRequest first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    TransferRequest next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commitBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // 큐에서 이미 꺼낸 요청은 failPending 이 볼 수 없으므로 여기서 완료한다.
+                for (TransferRequest request : batch) {
+                    request.future.completeExceptionally(new IllegalStateException("transfer service is interrupted", e));
+                }
+                break;
+            } catch (Exception e) {
+                log.error("group commit error", e);
+                for (TransferRequest request : batch) {
+                    request.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+        failPending();
+    }
+
+    private void commitBatch(List<TransferRequest> batch) {
+        boolean[] executed = new boolean[1];
+        try {
+            txTemplate.executeWithoutResult(status -> {
+                for (TransferRequest request : batch) {
+                    transfer(request);
+                }
+                executed[0] = true;
+            });
+        } catch (RuntimeException e) {
+            if (executed[0]) {
+                // 커밋 응답만 잃어버렸을 수 있다. 다시 실행하면 두 번 이체될 수 있다.
+                log.error("group commit outcome unknown size={}", batch.size(), e);
+                for (TransferRequest request : batch) {
+                    request.future.completeExceptionally(new IllegalStateException("commit outcome unknown", e));
+                }
+                return;
+            }
+            log.info("group commit rollback size={}, retry one by one", batch.size(), e);
+            for (TransferRequest request : batch) {
+                try {
+                    txTemplate.executeWithoutResult(status -> transfer(request));
+                    request.future.complete(null);
+                } catch (RuntimeException ex) {
+                    request.future.completeExceptionally(ex);
+                }
+            }
+            return;
+        }
+        for (TransferRequest request : batch) {
+            request.future.complete(null);
+        }
+    }
+
+    private void transfer(TransferRequest request) {
+        try {
+            bizLogic(request.fromId, request.toId, request.money);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void bizLogic(String fromId, String toId, int money) throws SQLException {
+        memberRepository.withdraw(fromId, money);
+
+        validation(toId);
+
+        memberRepository.deposit(toId, money);
+    }
+
+    private static void validation(String toId) {
+        if (toId.equals("ex")) {
+            throw new IllegalStateException("이체중 예외 발생");
+        }
+    }
+
+    private void failPending() {
+        TransferRequest request;
+        while ((request = queue.poll()) != null) {
+            request.future.completeExceptionally(new IllegalStateException("transfer service is closed"));
+        }
+    }
+
+    /**
+     * 남은 요청을 처리하고 종료
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        worker.join();
+        failPending(); // join 이후 늦게 들어온 요청
+    }
+
+    private static class TransferRequest {
+        private final String fromId;
+        private final String toId;
+        private final int money;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        TransferRequest(String fromId, String toId, int money) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.money = money;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.LedgerEntry;
+import hello.jdbc.repository.LedgerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 원장 정리 - 세그먼트를 transfer_ledger 테이블로 옮기고, 다 옮긴 세그먼트 파일은 지운다.
+ * 테이블의 마지막 tx_id 다음부터 chunkSize 건씩 트랜잭션 하나로 배치 적재한다.
+ * 기록 중인 마지막 세그먼트는 지우지 않는다.
+ * 기록 중인 원장은 TransferLedger 로 만든다. fsync 된 레코드까지만 옮기므로 테이블에 있는 레코드가 원장에서 사라지지 않는다.
+ */
+@Slf4j
+public class LedgerCompactor {
+
+    private final TransactionTemplate txTemplate;
+    private final LedgerRepository ledgerRepository;
+    private final Path ledgerDir;
+    private final LedgerReader reader;
+    private final int chunkSize;
+
+    /**
+     * 닫힌 원장 정리
+     */
+    public LedgerCompactor(PlatformTransactionManager transactionManager, LedgerRepository ledgerRepository,
+                           Path ledgerDir, int chunkSize) {
+        this(transactionManager, ledgerRepository, ledgerDir, new LedgerReader(ledgerDir), chunkSize);
+    }
+
+    /**
+     * 기록 중인 원장 정리 - fsync 된 레코드까지만
+     */
+    public LedgerCompactor(PlatformTransactionManager transactionManager, LedgerRepository ledgerRepository,
+                           TransferLedger ledger, int chunkSize) {
+        this(transactionManager, ledgerRepository, ledger.getDir(), new LedgerReader(ledger), chunkSize);
+    }
+
+    private LedgerCompactor(PlatformTransactionManager transactionManager, LedgerRepository ledgerRepository,
+                            Path ledgerDir, LedgerReader reader, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive chunkSize=" + chunkSize);
+        }
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.ledgerRepository = ledgerRepository;
+        this.ledgerDir = ledgerDir;
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return 적재한 레코드 수
+     */
+    public long compact() throws SQLException, IOException {
+        long lastTxId = ledgerRepository.findLastTxId();
+        long loaded = 0;
+        try (Stream<LedgerEntry> entries = reader.readAfter(lastTxId)) {
+            Iterator<LedgerEntry> iterator = entries.iterator();
+            List<LedgerEntry> chunk = new ArrayList<>(chunkSize);
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == chunkSize) {
+                    load(chunk);
+                    loaded += chunk.size();
+                    lastTxId = chunk.get(chunk.size() - 1).getTxId();
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                load(chunk);
+                loaded += chunk.size();
+                lastTxId = chunk.get(chunk.size() - 1).getTxId();
+            }
+        }
+        deleteLoadedSegments(lastTxId);
+        log.info("ledger compacted loaded={} lastTxId={}", loaded, lastTxId);
+        return loaded;
+    }
+
+    private void load(List<LedgerEntry> chunk) {
+        txTemplate.executeWithoutResult(status -> {
+            try {
+                ledgerRepository.saveAll(chunk);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * 다음 세그먼트의 첫 txId 가 적재된 txId 이하로 이어지면 이 세그먼트는 전부 적재된 것이다.
+     */
+    private void deleteLoadedSegments(long loadedTxId) throws IOException {
+        List<Path> segments = LedgerSegment.list(ledgerDir);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (LedgerSegment.firstTxId(segments.get(i + 1)) - 1 > loadedTxId) {
+                break;
+            }
+            Files.delete(segments.get(i));
+            log.info("ledger segment deleted segment={}", segments.get(i));
+        }
+    }
+}
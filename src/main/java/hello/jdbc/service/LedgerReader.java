@@ -0,0 +1,107 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.LedgerEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 원장 순차 조회 - 세그먼트를 txId 순서로 읽는다.
+ * 기록 중인 원장은 LedgerReader(ledger) 로 만든다. 읽기 시작할 때 fsync 된 레코드(durableTxId)까지만 돌려주므로
+ * 장애가 나면 사라질 레코드를 다른 곳으로 옮기지 않는다.
+ */
+@Slf4j
+public class LedgerReader {
+
+    private final Path dir;
+    private final LongSupplier durableTxId;
+
+    /**
+     * 닫힌 원장 - 파일에 있는 레코드를 모두 읽는다. (TransferLedger 는 열 때 fsync 한다)
+     */
+    public LedgerReader(Path dir) {
+        this(dir, () -> Long.MAX_VALUE);
+    }
+
+    /**
+     * 기록 중인 원장 - fsync 된 레코드까지만 읽는다.
+     */
+    public LedgerReader(TransferLedger ledger) {
+        this(ledger.getDir(), ledger::getDurableTxId);
+    }
+
+    private LedgerReader(Path dir, LongSupplier durableTxId) {
+        this.dir = dir;
+        this.durableTxId = durableTxId;
+    }
+
+    public Stream<LedgerEntry> readAll() throws IOException {
+        return readAfter(0);
+    }
+
+    /**
+     * afterTxId 다음 레코드부터 읽는다. (재처리 시작 위치)
+     */
+    public Stream<LedgerEntry> readAfter(long afterTxId) throws IOException {
+        long untilTxId = durableTxId.getAsLong();
+        List<Path> segments = LedgerSegment.list(dir);
+        // 다음 세그먼트가 afterTxId 이하에서 시작하면 이 세그먼트는 건너뛴다.
+        int first = 0;
+        while (first + 1 < segments.size() && LedgerSegment.firstTxId(segments.get(first + 1)) <= afterTxId + 1) {
+            first++;
+        }
+        Iterator<Path> remaining = segments.subList(first, segments.size()).iterator();
+
+        Spliterator<LedgerEntry> spliterator = new Spliterators.AbstractSpliterator<>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private MappedByteBuffer buffer;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super LedgerEntry> action) {
+                while (true) {
+                    if (buffer == null) {
+                        if (!remaining.hasNext()) {
+                            return false;
+                        }
+                        buffer = map(remaining.next());
+                    }
+                    LedgerEntry entry = LedgerSegment.read(buffer);
+                    if (entry != null && entry.getTxId() > untilTxId) {
+                        return false;
+                    }
+                    if (entry == null) {
+                        buffer = null;
+                        continue;
+                    }
+                    if (entry.getTxId() > afterTxId) {
+                        action.accept(entry);
+                        return true;
+                    }
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    private static MappedByteBuffer map(Path segment) {
+        // 매핑은 채널을 닫아도 유지된다.
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
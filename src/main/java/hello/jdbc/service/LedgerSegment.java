@@ -0,0 +1,129 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.LedgerEntry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 원장 세그먼트 파일 형식
+ * 파일 이름 : ledger-{첫 txId 20자리}.seg, 미리 segmentSize 만큼 0 으로 채워진 파일을 mmap 해서 쓴다.
+ * 레코드 : [length int][txId long][timestamp long][type byte][voidedTxId long][money int][from short+bytes][to short+bytes][crc32 int]
+ * type 은 LedgerEntry.Type 의 ordinal
+ * length 가 0 이면 세그먼트 끝, crc 가 맞지 않으면 쓰다가 잘린 레코드로 보고 거기서 멈춘다.
+ */
+final class LedgerSegment {
+
+    static final String PREFIX = "ledger-";
+    static final String SUFFIX = ".seg";
+    private static final int LENGTH_SIZE = 4;
+    private static final int CRC_SIZE = 4;
+
+    private LedgerSegment() {
+    }
+
+    static Path path(Path dir, long firstTxId) {
+        return dir.resolve(String.format("%s%020d%s", PREFIX, firstTxId, SUFFIX));
+    }
+
+    static long firstTxId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * 첫 txId 순서로 정렬된 세그먼트 목록
+     */
+    static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static int encodedSize(byte[] fromId, byte[] toId) {
+        return LENGTH_SIZE + payloadSize(fromId, toId) + CRC_SIZE;
+    }
+
+    private static int payloadSize(byte[] fromId, byte[] toId) {
+        return 8 + 8 + 1 + 8 + 4 + 2 + fromId.length + 2 + toId.length;
+    }
+
+    /**
+     * 현재 position 에 레코드를 쓴다. length 를 마지막에 써서 읽는 쪽이 반쯤 쓴 레코드를 보지 않게 한다.
+     */
+    static void write(ByteBuffer buffer, long txId, LedgerEntry.Type type, long voidedTxId,
+                      byte[] fromId, byte[] toId, int money, long timestamp) {
+        int start = buffer.position();
+        int payloadSize = payloadSize(fromId, toId);
+        buffer.position(start + LENGTH_SIZE);
+        buffer.putLong(txId);
+        buffer.putLong(timestamp);
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(voidedTxId);
+        buffer.putInt(money);
+        buffer.putShort((short) fromId.length);
+        buffer.put(fromId);
+        buffer.putShort((short) toId.length);
+        buffer.put(toId);
+        buffer.putInt(crc(buffer, start + LENGTH_SIZE, payloadSize));
+        buffer.putInt(start, payloadSize);
+    }
+
+    /**
+     * 현재 position 의 레코드를 읽고 position 을 다음 레코드로 옮긴다.
+     * 세그먼트 끝이거나 잘린 레코드면 null 을 반환하고 position 은 그대로 둔다.
+     */
+    static LedgerEntry read(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < LENGTH_SIZE) {
+            return null;
+        }
+        int payloadSize = buffer.getInt(start);
+        if (payloadSize <= 0 || payloadSize > buffer.remaining() - LENGTH_SIZE - CRC_SIZE) {
+            return null;
+        }
+        int payloadStart = start + LENGTH_SIZE;
+        if (crc(buffer, payloadStart, payloadSize) != buffer.getInt(payloadStart + payloadSize)) {
+            return null;
+        }
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(payloadStart);
+        long txId = payload.getLong();
+        long timestamp = payload.getLong();
+        LedgerEntry.Type type = LedgerEntry.Type.values()[payload.get()];
+        long voidedTxId = payload.getLong();
+        int money = payload.getInt();
+        String fromId = readString(payload);
+        String toId = readString(payload);
+        buffer.position(payloadStart + payloadSize + CRC_SIZE);
+        return new LedgerEntry(txId, type, voidedTxId, fromId, toId, money, timestamp);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        CRC32 crc32 = new CRC32();
+        crc32.update(slice);
+        return (int) crc32.getValue();
+    }
+}
@@ -0,0 +1,26 @@
+package hello.jdbc.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+
+/**
+ *  트랜잭션 템플릿 이체 앞단에 회원별 스트라이프 락
+ *  같은 회원을 건드리는 이체는 커넥션을 얻기 전에 JVM 안에서 대기하므로
+ *  DB row 락을 기다리며 커넥션 풀을 점유하지 않는다.
+ * */
+
+@RequiredArgsConstructor
+@Slf4j
+public class LockingMemberServiceV3_2 {
+
+    private final AccountLockManager lockManager;
+    private final MemberServiceV3_2 memberService;
+
+    public void accountTransfer(String fromId, String toId, int money) throws SQLException {
+        try (AccountLockManager.Locked locked = lockManager.lock(fromId, toId)) {
+            memberService.accountTransfer(fromId, toId, money);
+        }
+    }
+}
@@ -1,18 +1,46 @@
 package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.metrics.Counter;
+import hello.jdbc.metrics.MetricsRegistry;
+import hello.jdbc.metrics.Timer;
 import hello.jdbc.repository.MemberRepositoryV1;
-import lombok.RequiredArgsConstructor;
 
 import java.sql.SQLException;
 
-@RequiredArgsConstructor
+/**
+ * MetricsRegistry 를 주면 service.v1.* 으로 이체 시간과 실패 건수를 기록한다.
+ */
 public class MemberServiceV1 {
 
     private final MemberRepositoryV1 memberRepositoryV1;
+    private final Timer transferTimer;
+    private final Counter transferFailure;
+
+    public MemberServiceV1(MemberRepositoryV1 memberRepositoryV1) {
+        this(memberRepositoryV1, MetricsRegistry.NOOP);
+    }
+
+    public MemberServiceV1(MemberRepositoryV1 memberRepositoryV1, MetricsRegistry metrics) {
+        this.memberRepositoryV1 = memberRepositoryV1;
+        this.transferTimer = metrics.timer("service.v1.accountTransfer");
+        this.transferFailure = metrics.counter("service.v1.accountTransfer.failure");
+    }
 
     public void accountTransfer(String fromId, String toId, int money) throws SQLException {
 
+        long start = System.nanoTime();
+        try {
+            bizLogic(fromId, toId, money);
+        } catch (SQLException | RuntimeException e) {
+            transferFailure.increment();
+            throw e;
+        } finally {
+            transferTimer.record(System.nanoTime() - start);
+        }
+    }
+
+    private void bizLogic(String fromId, String toId, int money) throws SQLException {
         Member fromMember = memberRepositoryV1.findById(fromId);
         Member toMember = memberRepositoryV1.findById(toId);
 
@@ -21,8 +49,6 @@ public class MemberServiceV1 {
         validation(toMember);
 
         memberRepositoryV1.update(toId, toMember.getMoney() + money);
-
-
     }
 
     private static void validation(Member toMember) {
@@ -1,9 +1,12 @@
 package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.jfr.TransactionEvent;
+import hello.jdbc.metrics.Counter;
+import hello.jdbc.metrics.MetricsRegistry;
+import hello.jdbc.metrics.Timer;
 import hello.jdbc.repository.MemberRepositoryV1;
 import hello.jdbc.repository.MemberRepositoryV2;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.support.JdbcUtils;
 
@@ -11,23 +14,53 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
 
-@RequiredArgsConstructor
+/**
+ * 트랜잭션 - 파라미터 연동, 풀을 고려한 종료
+ * commit/rollback 은 JFR 이벤트(hello.jdbc.Transaction)로 남는다.
+ * MetricsRegistry 를 주면 service.v2.* 으로 이체 시간과 실패 건수를 기록한다.
+ */
 @Slf4j
 public class MemberServiceV2 {
 
     private final DataSource dataSource;
     private final MemberRepositoryV2 memberRepositoryV1;
+    private final Timer transferTimer;
+    private final Counter transferFailure;
+
+    public MemberServiceV2(DataSource dataSource, MemberRepositoryV2 memberRepositoryV1) {
+        this(dataSource, memberRepositoryV1, MetricsRegistry.NOOP);
+    }
+
+    public MemberServiceV2(DataSource dataSource, MemberRepositoryV2 memberRepositoryV1, MetricsRegistry metrics) {
+        this.dataSource = dataSource;
+        this.memberRepositoryV1 = memberRepositoryV1;
+        this.transferTimer = metrics.timer("service.v2.accountTransfer");
+        this.transferFailure = metrics.counter("service.v2.accountTransfer.failure");
+    }
 
     public void accountTransfer(String fromId, String toId, int money) throws SQLException {
 
+        long start = System.nanoTime();
+        try {
+            transfer(fromId, toId, money);
+        } catch (SQLException | RuntimeException e) {
+            transferFailure.increment();
+            throw e;
+        } finally {
+            transferTimer.record(System.nanoTime() - start);
+        }
+    }
+
+    private void transfer(String fromId, String toId, int money) throws SQLException {
+
         Connection con = dataSource.getConnection();
         try {
             con.setAutoCommit(false); // 트랜잭션 시작
             bizLogic(con,fromId, toId, money);
-            con.commit(); // 성공 시 커밋
+            commit(con, fromId); // 성공 시 커밋
 
         } catch (Exception e) {
-            con.rollback(); // 실패시 롤백
+            rollback(con, fromId); // 실패시 롤백
             throw new IllegalStateException(e);
         }finally {
             release(con);
@@ -36,6 +69,26 @@ public class MemberServiceV2 {
 
 
 
+    }
+
+    private static void commit(Connection con, String fromId) throws SQLException {
+        TransactionEvent event = TransactionEvent.start("v2.accountTransfer", fromId, TransactionEvent.COMMIT);
+        try {
+            con.commit();
+            event.success();
+        } finally {
+            event.finish();
+        }
+    }
+
+    private static void rollback(Connection con, String fromId) throws SQLException {
+        TransactionEvent event = TransactionEvent.start("v2.accountTransfer", fromId, TransactionEvent.ROLLBACK);
+        try {
+            con.rollback();
+            event.success();
+        } finally {
+            event.finish();
+        }
     }
 
     private void bizLogic(Connection con, String fromId, String toId, int money) throws SQLException {
@@ -56,6 +109,8 @@ public class MemberServiceV2 {
             } catch (Exception e) {
                 log.info("error", e);
             }
+            // setAutoCommit 이 실패해도 커넥션은 반드시 닫는다. (풀 누수 방지)
+            JdbcUtils.closeConnection(con);
         }
     }
 
@@ -1,9 +1,12 @@
 package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.jfr.TransactionEventSynchronization;
+import hello.jdbc.metrics.Counter;
+import hello.jdbc.metrics.MetricsRegistry;
+import hello.jdbc.metrics.Timer;
 import hello.jdbc.repository.MemberRepositoryV2;
 import hello.jdbc.repository.MemberRepositoryV3;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
@@ -12,35 +15,103 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  *  트랜잭션 - 트랜잭션 매니저
+ *  MetricsRegistry 를 주면 service.v3_1.* 으로 이체 시간과 실패 건수를 기록한다.
+ *  commit/rollback 은 JFR 이벤트(hello.jdbc.Transaction)로 남는다.
  * */
 
 
-@RequiredArgsConstructor
 @Slf4j
 public class MemberServiceV3_1 {
 
     //    private final DataSource dataSource;
     private final PlatformTransactionManager transactionManager;
     private final MemberRepositoryV3 memberRepositoryV1;
+    private final Timer transferTimer;
+    private final Counter transferFailure;
+    private final Timer batchTimer;
+    private final Counter batchFailure;
+    private final Counter batchItemFailure;
+
+    public MemberServiceV3_1(PlatformTransactionManager transactionManager, MemberRepositoryV3 memberRepositoryV1) {
+        this(transactionManager, memberRepositoryV1, MetricsRegistry.NOOP);
+    }
+
+    public MemberServiceV3_1(PlatformTransactionManager transactionManager, MemberRepositoryV3 memberRepositoryV1,
+                             MetricsRegistry metrics) {
+        this.transactionManager = transactionManager;
+        this.memberRepositoryV1 = memberRepositoryV1;
+        this.transferTimer = metrics.timer("service.v3_1.accountTransfer");
+        this.transferFailure = metrics.counter("service.v3_1.accountTransfer.failure");
+        this.batchTimer = metrics.timer("service.v3_1.accountTransferBatch");
+        // failure : 배치 전체가 롤백된 횟수, itemFailure : savepoint 로 롤백된 이체 건수
+        this.batchFailure = metrics.counter("service.v3_1.accountTransferBatch.failure");
+        this.batchItemFailure = metrics.counter("service.v3_1.accountTransferBatch.itemFailure");
+    }
 
     public void accountTransfer(String fromId, String toId, int money) throws SQLException {
 
+        long start = System.nanoTime();
         // transaction start
         TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        TransactionEventSynchronization.register("v3_1.accountTransfer", fromId);
 
         try {
             bizLogic(fromId, toId, money);
             transactionManager.commit(status);
         } catch (Exception e) {
             transactionManager.rollback(status);
+            transferFailure.increment();
             throw new IllegalStateException(e);
+        } finally {
+            transferTimer.record(System.nanoTime() - start);
         }
             //release 는 더이상 필요 없음 transactionManager 내부에서 전부 처리
     }
 
+    /**
+     * 여러 이체를 트랜잭션 하나로 처리 - 이체마다 savepoint 를 잡고, 실패한 이체는 savepoint 까지만 롤백
+     * 나머지 이체는 함께 커밋된다.
+     * @return 요청 순서대로 이체별 결과
+     */
+    public List<TransferResult> accountTransferBatch(List<Transfer> transfers) {
+
+        long start = System.nanoTime();
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        TransactionEventSynchronization.register("v3_1.accountTransferBatch", null);
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+
+        try {
+            for (Transfer transfer : transfers) {
+                Object savepoint = status.createSavepoint();
+                try {
+                    bizLogic(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+                    status.releaseSavepoint(savepoint);
+                    results.add(TransferResult.success(transfer));
+                } catch (Exception e) {
+                    log.info("transfer rollback to savepoint transfer={}", transfer, e);
+                    status.rollbackToSavepoint(savepoint);
+                    batchItemFailure.increment();
+                    results.add(TransferResult.failure(transfer, e));
+                }
+            }
+            transactionManager.commit(status);
+        } catch (Exception e) {
+            if (!status.isCompleted()) {
+                transactionManager.rollback(status);
+            }
+            batchFailure.increment();
+            throw new IllegalStateException(e);
+        } finally {
+            batchTimer.record(System.nanoTime() - start);
+        }
+        return results;
+    }
+
     private void bizLogic(String fromId, String toId, int money) throws SQLException {
         Member fromMember = memberRepositoryV1.findById(fromId);
         Member toMember = memberRepositoryV1.findById(toId);
@@ -1,9 +1,13 @@
 package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.jfr.TransactionEventSynchronization;
+import hello.jdbc.metrics.Counter;
+import hello.jdbc.metrics.MetricsRegistry;
+import hello.jdbc.metrics.Timer;
 import hello.jdbc.repository.MemberRepositoryV3;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
@@ -11,38 +15,199 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  *  트랜잭션 - 트랜잭션 템플릿
+ *  MetricsRegistry 를 주면 service.v3_2.* 으로 이체 시간, 실패/충돌/재시도 건수를 기록한다.
+ *  commit/rollback 은 JFR 이벤트(hello.jdbc.Transaction)로 남는다. (재시도하면 시도마다 남는다)
  * */
 
 
-@RequiredArgsConstructor
 @Slf4j
 public class MemberServiceV3_2 {
 
+    private static final int MAX_RETRY = 5;
+    private static final int OPTIMISTIC_MAX_RETRY = 20;
+    private static final long BASE_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 200;
+
     //    private final DataSource dataSource;
     private final TransactionTemplate txTemplate;
     private final MemberRepositoryV3 memberRepository;
+    private final Timer transferTimer;
+    private final Counter transferFailure;
+    private final OperationMetrics pessimisticMetrics;
+    private final OperationMetrics optimisticMetrics;
 
     public MemberServiceV3_2(PlatformTransactionManager transactionManager, MemberRepositoryV3 memberRepository) {
+        this(transactionManager, memberRepository, MetricsRegistry.NOOP);
+    }
+
+    public MemberServiceV3_2(PlatformTransactionManager transactionManager, MemberRepositoryV3 memberRepository,
+                             MetricsRegistry metrics) {
 
         this.txTemplate = new TransactionTemplate(transactionManager);
         this.memberRepository = memberRepository;
+        this.transferTimer = metrics.timer("service.v3_2.accountTransfer");
+        this.transferFailure = metrics.counter("service.v3_2.accountTransfer.failure");
+        this.pessimisticMetrics = new OperationMetrics(metrics, "service.v3_2.accountTransferPessimistic");
+        this.optimisticMetrics = new OperationMetrics(metrics, "service.v3_2.accountTransferOptimistic");
     }
 
     public void accountTransfer(String fromId, String toId, int money) throws SQLException {
 
-        txTemplate.executeWithoutResult((status) -> {
-            // 성공하면 commit 실패하면 예외 터지면서 rollback -> 언체크예외가 발생하면 rollback
+        long start = System.nanoTime();
+        try {
+            txTemplate.executeWithoutResult((status) -> {
+                // 성공하면 commit 실패하면 예외 터지면서 rollback -> 언체크예외가 발생하면 rollback
+                TransactionEventSynchronization.register("v3_2.accountTransfer", fromId);
+                try {
+                    bizLogic(fromId, toId, money);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+
+            });
+        } catch (RuntimeException e) {
+            transferFailure.increment();
+            throw e;
+        } finally {
+            transferTimer.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * 비관적 락 이체 - 두 회원 row 를 memberId 순서로 for update 잠금 (A->B, B->A 가 같은 순서로 잠그므로 데드락 없음)
+     * 데드락/락 타임아웃은 지터를 준 지수 백오프로 최대 MAX_RETRY 번 재시도한다.
+     */
+    public void accountTransferPessimistic(String fromId, String toId, int money) throws SQLException {
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("same member fromId=" + fromId);
+        }
+
+        executeWithRetry(pessimisticMetrics, "v3_2.accountTransferPessimistic", fromId,
+                MAX_RETRY, () -> bizLogicPessimistic(fromId, toId, money));
+    }
+
+    /**
+     * 낙관적 락 이체 - 잠그지 않고 읽은 뒤 version 조건 update, 충돌하면 트랜잭션을 롤백하고 처음부터 다시 시도
+     * 읽기 위주이거나 경합이 적을 때 비관적 락보다 처리량이 좋다.
+     */
+    public void accountTransferOptimistic(String fromId, String toId, int money) throws SQLException {
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("same member fromId=" + fromId);
+        }
+        executeWithRetry(optimisticMetrics, "v3_2.accountTransferOptimistic", fromId,
+                OPTIMISTIC_MAX_RETRY, () -> bizLogicOptimistic(fromId, toId, money));
+    }
+
+    /**
+     * 트랜잭션 단위로 재시도 - 데드락/락 타임아웃/version 충돌은 지터를 준 지수 백오프 후 다시 시도
+     */
+    private void executeWithRetry(OperationMetrics operation, String sqlId, String memberId, int maxRetry,
+                                  TransferLogic logic) {
+        long start = System.nanoTime();
+        try {
+            retry(operation, sqlId, memberId, maxRetry, logic);
+        } catch (RuntimeException e) {
+            operation.failure.increment();
+            throw e;
+        } finally {
+            operation.timer.record(System.nanoTime() - start);
+        }
+    }
+
+    private void retry(OperationMetrics operation, String sqlId, String memberId, int maxRetry, TransferLogic logic) {
+        for (int attempt = 1; ; attempt++) {
             try {
-                bizLogic(fromId, toId, money);
-            } catch (SQLException e) {
-                throw new IllegalStateException(e);
+                txTemplate.executeWithoutResult((status) -> {
+                    TransactionEventSynchronization.register(sqlId, memberId);
+                    try {
+                        logic.run();
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                return;
+            } catch (RuntimeException e) {
+                boolean conflict = e instanceof OptimisticLockingFailureException;
+                if (conflict) {
+                    operation.conflict.increment();
+                }
+                if (attempt > maxRetry || !(conflict || isTransient(e))) {
+                    throw e;
+                }
+                operation.retry.increment();
+                long backoff = Math.min(BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 10), MAX_BACKOFF_MILLIS);
+                long sleep = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+                log.info("transfer retry attempt={} sleep={}ms", attempt, sleep);
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
             }
+        }
+    }
+
+    /**
+     * update 가 row 를 잠그므로 비관적 락과 같이 memberId 순서로 쓴다. (A->B, B->A 가 서로 반대 순서로 잠그지 않게)
+     */
+    private void bizLogicOptimistic(String fromId, String toId, int money) throws SQLException {
+        Member fromMember = memberRepository.findById(fromId);
+        Member toMember = memberRepository.findById(toId);
+        fromMember.setMoney(fromMember.getMoney() - money);
+        toMember.setMoney(toMember.getMoney() + money);
 
-        });
+        boolean fromFirst = fromId.compareTo(toId) < 0;
+        updateWithVersion(fromFirst ? fromMember : toMember);
 
+        validation(toMember);
+
+        updateWithVersion(fromFirst ? toMember : fromMember);
+    }
+
+    private void updateWithVersion(Member member) throws SQLException {
+        if (!memberRepository.updateWithVersion(member.getMemberId(), member.getMoney(), member.getVersion())) {
+            throw new OptimisticLockingFailureException("version conflict memberId=" + member.getMemberId());
+        }
+    }
+
+    private void bizLogicPessimistic(String fromId, String toId, int money) throws SQLException {
+        boolean fromFirst = fromId.compareTo(toId) < 0;
+        Member first = memberRepository.findByIdForUpdate(fromFirst ? fromId : toId);
+        Member second = memberRepository.findByIdForUpdate(fromFirst ? toId : fromId);
+        Member fromMember = fromFirst ? first : second;
+        Member toMember = fromFirst ? second : first;
+
+        memberRepository.update(fromId, fromMember.getMoney() - money);
+
+        validation(toMember);
+
+        memberRepository.update(toId, toMember.getMoney() + money);
+    }
+
+    /**
+     * 데드락(40001), 락 타임아웃(HYT00), H2 동시 수정(90131) 등 다시 시도하면 성공할 수 있는 예외
+     */
+    private static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException || cause instanceof SQLTransactionRollbackException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String sqlState = ((SQLException) cause).getSQLState();
+                if ("40001".equals(sqlState) || "HYT00".equals(sqlState) || "90131".equals(sqlState)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     private void bizLogic(String fromId, String toId, int money) throws SQLException {
@@ -71,6 +236,26 @@ public class MemberServiceV3_2 {
             throw new IllegalStateException("이체중 예외 발생");
         }
     }
-}
 
+    @FunctionalInterface
+    private interface TransferLogic {
+        void run() throws SQLException;
+    }
+
+    /**
+     * 재시도 이체 지표 - name, name.failure, name.conflict, name.retry
+     */
+    private static class OperationMetrics {
+        private final Timer timer;
+        private final Counter failure;
+        private final Counter conflict;
+        private final Counter retry;
 
+        private OperationMetrics(MetricsRegistry metrics, String name) {
+            this.timer = metrics.timer(name);
+            this.failure = metrics.counter(name + ".failure");
+            this.conflict = metrics.counter(name + ".conflict");
+            this.retry = metrics.counter(name + ".retry");
+        }
+    }
+}
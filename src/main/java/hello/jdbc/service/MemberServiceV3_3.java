@@ -0,0 +1,116 @@
+package hello.jdbc.service;
+
+import hello.jdbc.metrics.Counter;
+import hello.jdbc.metrics.MetricsRegistry;
+import hello.jdbc.metrics.Timer;
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+
+/**
+ *  트랜잭션 - 트랜잭션 템플릿 + 상대값 이체
+ *  findById 2번 + update 2번 대신 조건부 update 2번 (money = money - ?, money = money + ?)
+ *  TransferLedger 를 주면 이체를 원장에 기록한다. 커밋 직전(트랜잭션 안)에 fsync 까지 끝내므로 커밋된 이체는 원장에 반드시 있다.
+ *  커밋이 롤백되면 원래 txId 를 가리키는 VOID 레코드를 남긴다. 원장 기록과 커밋 사이에 프로세스가 죽으면 원장에만 있는 이체가 남을 수 있다.
+ *  MetricsRegistry 를 주면 service.v3_3.* 으로 이체 시간, 원장 기록 시간, 실패 건수를 기록한다.
+ * */
+
+@Slf4j
+public class MemberServiceV3_3 {
+
+    private final TransactionTemplate txTemplate;
+    private final MemberRepositoryV3 memberRepository;
+    private final TransferLedger ledger;
+    private final Timer transferTimer;
+    private final Counter transferFailure;
+    private final Timer ledgerTimer;
+
+    public MemberServiceV3_3(PlatformTransactionManager transactionManager, MemberRepositoryV3 memberRepository) {
+        this(transactionManager, memberRepository, null);
+    }
+
+    public MemberServiceV3_3(PlatformTransactionManager transactionManager, MemberRepositoryV3 memberRepository,
+                             TransferLedger ledger) {
+        this(transactionManager, memberRepository, ledger, MetricsRegistry.NOOP);
+    }
+
+    public MemberServiceV3_3(PlatformTransactionManager transactionManager, MemberRepositoryV3 memberRepository,
+                             TransferLedger ledger, MetricsRegistry metrics) {
+
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.memberRepository = memberRepository;
+        this.ledger = ledger;
+        this.transferTimer = metrics.timer("service.v3_3.accountTransfer");
+        this.transferFailure = metrics.counter("service.v3_3.accountTransfer.failure");
+        this.ledgerTimer = metrics.timer("service.v3_3.ledger");
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) throws SQLException {
+
+        long start = System.nanoTime();
+        try {
+            txTemplate.executeWithoutResult((status) -> {
+                try {
+                    bizLogic(fromId, toId, money);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (ledger != null) {
+                    appendLedger(fromId, toId, money);
+                }
+            });
+        } catch (RuntimeException e) {
+            transferFailure.increment();
+            throw e;
+        } finally {
+            transferTimer.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 트랜잭션 안에서 원장 기록 - 실패하면 예외로 롤백된다. 기록한 뒤 롤백되면 VOID 레코드로 무효 처리한다.
+     */
+    private void appendLedger(String fromId, String toId, int money) {
+        long ledgerStart = System.nanoTime();
+        long txId = ledger.append(fromId, toId, money);
+        ledgerTimer.record(System.nanoTime() - ledgerStart);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    return;
+                }
+                if (status == STATUS_UNKNOWN) {
+                    log.error("transfer commit outcome unknown, ledger needs reconcile txId={}", txId);
+                    return;
+                }
+                try {
+                    long voidTxId = ledger.appendVoid(txId, fromId, toId, money);
+                    log.warn("transfer rolled back after ledger append txId={} voidTxId={}", txId, voidTxId);
+                } catch (RuntimeException e) {
+                    log.error("ledger void failed txId={}", txId, e);
+                }
+            }
+        });
+    }
+
+    private void bizLogic(String fromId, String toId, int money) throws SQLException {
+        memberRepository.withdraw(fromId, money);
+
+        validation(toId);
+
+        memberRepository.deposit(toId, money);
+    }
+
+    private static void validation(String toId) {
+        if (toId.equals("ex")) {
+            throw new IllegalStateException("이체중 예외 발생");
+        }
+    }
+}
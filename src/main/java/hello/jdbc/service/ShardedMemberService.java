@@ -0,0 +1,180 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.ShardTransfer;
+import hello.jdbc.repository.ShardTransferRepository;
+import hello.jdbc.repository.ShardedMemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ *  트랜잭션 - 샤딩
+ *  두 회원이 같은 샤드에 있으면 그 샤드의 트랜잭션 하나로 이체한다.
+ *  다른 샤드에 있으면 샤드별 로컬 트랜잭션을 차례로 실행하고 실패 시 보상한다. (saga)
+ *  1. 출금 샤드 : 출금 + 이체 기록(PENDING)
+ *  2. 입금 샤드 : 입금 + 이체 기록(RECEIVED) - 같은 transferId 가 이미 있으면 건너뛴다.
+ *  3. 출금 샤드 : PENDING -> DONE
+ *  2 가 실패하면 출금 샤드에서 PENDING -> CANCELLED 로 바꾸고 출금액을 되돌린다.
+ *  1 과 3 사이에 종료되면 recover() 가 입금 샤드 기록을 보고 DONE 또는 CANCELLED 로 마무리한다.
+ *  recover() 는 입금 샤드에 기록이 없으면 먼저 CANCELLED 기록을 남겨(펜스) 아직 진행 중인 2 가 입금하지 못하게 한 뒤 되돌린다.
+ *  transfer_id 가 기본 키라서 2 와 펜스 중 먼저 커밋한 쪽만 남는다.
+ *  그 사이에는 출금된 금액이 어느 잔액에도 없는 상태가 잠깐 보일 수 있다.
+ * */
+
+@Slf4j
+public class ShardedMemberService {
+
+    public static final String PENDING = "PENDING";
+    public static final String RECEIVED = "RECEIVED";
+    public static final String DONE = "DONE";
+    public static final String CANCELLED = "CANCELLED";
+
+    private final ShardedMemberRepository memberRepository;
+    private final List<TransactionTemplate> txTemplates = new ArrayList<>();
+    private final List<ShardTransferRepository> transferRepositories = new ArrayList<>();
+
+    public ShardedMemberService(ShardedMemberRepository memberRepository) {
+        this.memberRepository = memberRepository;
+        for (int shard = 0; shard < memberRepository.getShardCount(); shard++) {
+            txTemplates.add(new TransactionTemplate(new DataSourceTransactionManager(memberRepository.getDataSource(shard))));
+            transferRepositories.add(new ShardTransferRepository(memberRepository.getDataSource(shard)));
+        }
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) throws SQLException {
+        int fromShard = memberRepository.shardOf(fromId);
+        int toShard = memberRepository.shardOf(toId);
+        if (fromShard == toShard) {
+            inTransaction(fromShard, () -> {
+                memberRepository.withdraw(fromId, money);
+                validation(toId);
+                memberRepository.deposit(toId, money);
+            });
+            return;
+        }
+
+        String transferId = UUID.randomUUID().toString();
+        inTransaction(fromShard, () -> {
+            memberRepository.withdraw(fromId, money);
+            transferRepositories.get(fromShard).save(new ShardTransfer(transferId, fromId, toId, money, PENDING));
+        });
+
+        try {
+            inTransaction(toShard, () -> {
+                validation(toId);
+                ShardTransferRepository inbox = transferRepositories.get(toShard);
+                Optional<ShardTransfer> received = inbox.findById(transferId);
+                if (received.isEmpty()) {
+                    memberRepository.deposit(toId, money);
+                    inbox.save(new ShardTransfer(transferId, fromId, toId, money, RECEIVED));
+                } else if (!RECEIVED.equals(received.get().getStatus())) {
+                    throw new IllegalStateException("transfer cancelled by recover transferId=" + transferId);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 커밋 응답만 잃어버린 경우에는 되돌리지 않는다.
+            if (!isReceived(toShard, transferId)) {
+                log.info("cross shard deposit failed, compensate transferId={}", transferId);
+                cancel(fromShard, transferId, fromId, money);
+                throw e;
+            }
+        }
+
+        try {
+            inTransaction(fromShard, () -> transferRepositories.get(fromShard).updateStatus(transferId, PENDING, DONE));
+        } catch (RuntimeException e) {
+            // 이체는 끝났다. PENDING 으로 남은 기록은 recover() 가 DONE 으로 바꾼다.
+            log.error("cross shard transfer complete but status update failed transferId={}", transferId, e);
+        }
+    }
+
+    /**
+     * PENDING 으로 남은 샤드 간 이체 마무리 - 이체와 동시에 실행해도 된다.
+     * 입금 샤드에 기록이 없으면 CANCELLED 기록으로 막은 뒤 되돌리고, 입금이 먼저 커밋됐으면 DONE 으로 바꾼다.
+     * @return 마무리한 건수
+     */
+    public int recover() throws SQLException {
+        int recovered = 0;
+        for (int shard = 0; shard < transferRepositories.size(); shard++) {
+            for (ShardTransfer transfer : transferRepositories.get(shard).findByStatus(PENDING)) {
+                int toShard = memberRepository.shardOf(transfer.getToId());
+                fence(toShard, transfer);
+                if (isReceived(toShard, transfer.getTransferId())) {
+                    int fromShard = shard;
+                    inTransaction(fromShard, () ->
+                            transferRepositories.get(fromShard).updateStatus(transfer.getTransferId(), PENDING, DONE));
+                } else {
+                    cancel(shard, transfer.getTransferId(), transfer.getFromId(), transfer.getMoney());
+                }
+                log.info("recovered {}", transfer);
+                recovered++;
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * 입금 샤드에 기록이 없으면 CANCELLED 기록을 남긴다. 이후 같은 transferId 의 입금은 실패한다.
+     */
+    private void fence(int toShard, ShardTransfer transfer) {
+        try {
+            inTransaction(toShard, () -> {
+                ShardTransferRepository inbox = transferRepositories.get(toShard);
+                if (inbox.findById(transfer.getTransferId()).isEmpty()) {
+                    inbox.save(new ShardTransfer(transfer.getTransferId(), transfer.getFromId(), transfer.getToId(),
+                            transfer.getMoney(), CANCELLED));
+                }
+            });
+        } catch (RuntimeException e) {
+            // 동시에 입금이 커밋되면 기본 키 중복 - 다시 조회해서 판단한다.
+            log.info("fence failed transferId={}", transfer.getTransferId(), e);
+        }
+    }
+
+    private boolean isReceived(int toShard, String transferId) {
+        try {
+            return transferRepositories.get(toShard).findById(transferId)
+                    .filter(transfer -> RECEIVED.equals(transfer.getStatus()))
+                    .isPresent();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 보상 - PENDING 인 경우에만 CANCELLED 로 바꾸고 출금액을 되돌린다. (두번 되돌리지 않는다)
+     */
+    private void cancel(int fromShard, String transferId, String fromId, int money) {
+        inTransaction(fromShard, () -> {
+            if (transferRepositories.get(fromShard).updateStatus(transferId, PENDING, CANCELLED)) {
+                memberRepository.deposit(fromId, money);
+            }
+        });
+    }
+
+    private void inTransaction(int shard, ShardLogic logic) {
+        txTemplates.get(shard).executeWithoutResult(status -> {
+            try {
+                logic.run();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void validation(String toId) {
+        if (toId.equals("ex")) {
+            throw new IllegalStateException("이체중 예외 발생");
+        }
+    }
+
+    private interface ShardLogic {
+        void run() throws SQLException;
+    }
+}
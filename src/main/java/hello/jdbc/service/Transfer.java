@@ -0,0 +1,18 @@
+package hello.jdbc.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * 이체 요청 한 건
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class Transfer {
+
+    private final String fromId;
+    private final String toId;
+    private final int money;
+}
@@ -0,0 +1,312 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.LedgerEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 이체 원장 - append-only journal
+ * 세그먼트 파일을 mmap 해서 기록하고 segmentSize 를 넘으면 다음 세그먼트로 넘어간다. (형식은 LedgerSegment)
+ * fsync 는 flusher 스레드 하나가 모아서 한다. append 는 자기 레코드가 fsync 될 때까지 기다리므로
+ * 동시에 들어온 append 들이 fsync 한번을 나눠 쓴다. (그룹 커밋)
+ * 다시 열면 마지막 세그먼트의 끝(잘린 레코드 이전)부터 이어서 쓴다.
+ * 기록 중인 원장은 LedgerReader(ledger) 로 읽는다. fsync 된 레코드(getDurableTxId)까지만 돌려준다.
+ * 기록한 이체가 롤백되면 appendVoid 로 원래 txId 를 가리키는 VOID 레코드를 남긴다. (반대 방향 이체로 기록하지 않는다)
+ */
+@Slf4j
+public class TransferLedger implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private Segment current;
+    // 다음 세그먼트로 넘어갔지만 아직 fsync 하지 않은 세그먼트
+    private final List<Segment> rolled = new ArrayList<>();
+    private long lastTxId;
+    private long durableTxId;
+    private RuntimeException failure;
+    private volatile boolean running = true;
+
+    private final Thread flusher;
+
+    public TransferLedger(Path dir) {
+        this(dir, DEFAULT_SEGMENT_SIZE, 0);
+    }
+
+    /**
+     * @param maxWaitMillis fsync 전에 append 를 더 모으기 위해 기다리는 시간 (0 이면 바로)
+     */
+    public TransferLedger(Path dir, int segmentSize, long maxWaitMillis) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        try {
+            Files.createDirectories(dir);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.durableTxId = lastTxId;
+
+        this.flusher = new Thread(this::runFlusher, "transfer-ledger-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    private void open() throws IOException {
+        List<Path> segments = LedgerSegment.list(dir);
+        if (segments.isEmpty()) {
+            current = Segment.create(LedgerSegment.path(dir, 1), segmentSize);
+            lastTxId = 0;
+            return;
+        }
+
+        Path last = segments.get(segments.size() - 1);
+        current = Segment.open(last);
+        lastTxId = LedgerSegment.firstTxId(last) - 1;
+        LedgerEntry entry;
+        while ((entry = LedgerSegment.read(current.buffer)) != null) {
+            lastTxId = entry.getTxId();
+        }
+        // 잘린 레코드가 남아 있으면 지우고 그 자리부터 쓴다.
+        int position = current.buffer.position();
+        if (current.buffer.remaining() >= 4 && current.buffer.getInt(position) != 0) {
+            log.info("truncate torn ledger record segment={} position={}", last, position);
+            for (int i = position; i < current.buffer.limit(); i++) {
+                current.buffer.put(i, (byte) 0);
+            }
+            current.buffer.force();
+        }
+        // 이전 프로세스가 fsync 하지 못한 레코드가 페이지 캐시에 남아 있을 수 있다. 지금 fsync 해서 durableTxId 에 포함한다.
+        current.buffer.force();
+        log.info("ledger opened segment={} lastTxId={}", last, lastTxId);
+    }
+
+    /**
+     * 이체 한 건 기록 - fsync 가 끝난 뒤 반환한다.
+     * @return 원장이 발급한 txId
+     */
+    public long append(String fromId, String toId, int money) {
+        return append(LedgerEntry.Type.TRANSFER, 0, fromId, toId, money);
+    }
+
+    /**
+     * 롤백된 이체 무효 기록 - voidedTxId 를 가리키는 VOID 레코드, fsync 가 끝난 뒤 반환한다.
+     * @return 원장이 발급한 txId
+     */
+    public long appendVoid(long voidedTxId, String fromId, String toId, int money) {
+        return append(LedgerEntry.Type.VOID, voidedTxId, fromId, toId, money);
+    }
+
+    private long append(LedgerEntry.Type type, long voidedTxId, String fromId, String toId, int money) {
+        byte[] from = fromId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = toId.getBytes(StandardCharsets.UTF_8);
+        int size = LedgerSegment.encodedSize(from, to);
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("ledger record larger than segment size=" + size);
+        }
+
+        lock.lock();
+        try {
+            checkOpen();
+            if (current.buffer.remaining() < size) {
+                roll();
+            }
+            long txId = lastTxId + 1;
+            LedgerSegment.write(current.buffer, txId, type, voidedTxId, from, to, money, System.currentTimeMillis());
+            lastTxId = txId;
+            written.signal();
+
+            while (durableTxId < txId) {
+                checkFailure();
+                durable.awaitUninterruptibly();
+            }
+            return txId;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen() {
+        checkFailure();
+        if (!running) {
+            throw new IllegalStateException("ledger is closed");
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("ledger fsync failed", failure);
+        }
+    }
+
+    // lock 안에서 호출
+    private void roll() throws IOException {
+        rolled.add(current);
+        current = Segment.create(LedgerSegment.path(dir, lastTxId + 1), segmentSize);
+        log.info("ledger rolled segment={}", current.path);
+    }
+
+    private void runFlusher() {
+        while (true) {
+            lock.lock();
+            try {
+                while (running && durableTxId == lastTxId) {
+                    written.awaitUninterruptibly();
+                }
+                if (!running && durableTxId == lastTxId) {
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (maxWaitNanos > 0) {
+                LockSupport.parkNanos(maxWaitNanos);
+            }
+
+            long target;
+            List<Segment> toForce;
+            lock.lock();
+            try {
+                target = lastTxId;
+                toForce = new ArrayList<>(rolled);
+                rolled.clear();
+                toForce.add(current);
+            } finally {
+                lock.unlock();
+            }
+
+            RuntimeException error = null;
+            try {
+                for (int i = 0; i < toForce.size(); i++) {
+                    Segment segment = toForce.get(i);
+                    segment.buffer.force();
+                    if (i < toForce.size() - 1) {
+                        segment.close();
+                    }
+                }
+            } catch (IOException e) {
+                error = new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    log.error("ledger fsync error", error);
+                    failure = error;
+                    running = false;
+                } else {
+                    durableTxId = target;
+                }
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                break;
+            }
+        }
+    }
+
+    public long getLastTxId() {
+        lock.lock();
+        try {
+            return lastTxId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * fsync 가 끝난 마지막 txId - 이 txId 까지는 장애가 나도 남는다.
+     */
+    public long getDurableTxId() {
+        lock.lock();
+        try {
+            return durableTxId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * 대기 중인 append 를 fsync 하고 종료
+     */
+    @Override
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            written.signal();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join();
+
+        lock.lock();
+        try {
+            durable.signalAll();
+            current.close();
+        } catch (IOException e) {
+            log.info("error", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        static Segment open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
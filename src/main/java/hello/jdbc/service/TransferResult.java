@@ -0,0 +1,32 @@
+package hello.jdbc.service;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 이체 한 건의 처리 결과 - 실패한 경우 원인 예외를 담는다.
+ */
+@Getter
+@ToString
+public class TransferResult {
+
+    private final Transfer transfer;
+    private final Exception exception;
+
+    private TransferResult(Transfer transfer, Exception exception) {
+        this.transfer = transfer;
+        this.exception = exception;
+    }
+
+    public static TransferResult success(Transfer transfer) {
+        return new TransferResult(transfer, null);
+    }
+
+    public static TransferResult failure(Transfer transfer, Exception exception) {
+        return new TransferResult(transfer, exception);
+    }
+
+    public boolean isSuccess() {
+        return exception == null;
+    }
+}
@@ -0,0 +1,11 @@
+-- H2 스키마 - 여러 번 실행해도 되도록 if not exists 로 만든다.
+-- 핫 계좌 잔고 샤드 (HotAccountMemberRepositoryV3)
+create table if not exists member_balance_shard (
+    member_id varchar(10),
+    shard integer,
+    money integer not null default 0,
+    version bigint not null default 0,
+    primary key (member_id, shard)
+);
+-- 입금마다 하위 row 의 version 을 올린다. (member row 를 잠그지 않는다)
+alter table member_balance_shard add column if not exists version bigint default 0 not null;
@@ -0,0 +1,5 @@
+-- H2 스키마 - 여러 번 실행해도 되도록 if not exists 로 만든다.
+-- 쓰기 지연 저널 체크포인트 (JournalCheckpointRepository)
+create table if not exists journal_checkpoint (
+    journal_id bigint primary key
+);
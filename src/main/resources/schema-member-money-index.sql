@@ -0,0 +1,3 @@
+-- H2 스키마 - 여러 번 실행해도 되도록 if not exists 로 만든다.
+-- 잔고 범위 조회/키셋 페이지 (MemberRepositoryV3.findByMoneyRange, findPageAfterMoney)
+create index if not exists idx_member_money on member(money, member_id);
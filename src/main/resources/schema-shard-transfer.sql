@@ -0,0 +1,9 @@
+-- H2 스키마 - 여러 번 실행해도 되도록 if not exists 로 만든다.
+-- 샤드 간 이체 기록 (ShardTransferRepository)
+create table if not exists shard_transfer (
+    transfer_id varchar(36) primary key,
+    from_id varchar(10) not null,
+    to_id varchar(10) not null,
+    money integer not null,
+    status varchar(10) not null
+);
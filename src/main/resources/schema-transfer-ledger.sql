@@ -0,0 +1,14 @@
+-- H2 스키마 - 여러 번 실행해도 되도록 if not exists 로 만든다.
+-- 이체 원장 적재 (LedgerRepository)
+create table if not exists transfer_ledger (
+    tx_id bigint primary key,
+    entry_type varchar(8) default 'TRANSFER' not null,
+    voided_tx_id bigint,
+    from_id varchar(10) not null,
+    to_id varchar(10) not null,
+    money integer not null,
+    created_at timestamp not null
+);
+-- 롤백된 이체는 VOID 레코드로 원래 tx_id 를 가리킨다.
+alter table transfer_ledger add column if not exists entry_type varchar(8) default 'TRANSFER' not null;
+alter table transfer_ledger add column if not exists voided_tx_id bigint;
@@ -0,0 +1,10 @@
+-- H2 스키마 - 여러 번 실행해도 되도록 if not exists 로 만든다.
+-- 기능별 테이블은 schema-*.sql 에 따로 둔다.
+-- 기존 member 테이블(member_id, money)이 있으면 version 컬럼만 추가한다.
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    primary key (member_id)
+);
+-- 낙관적 락 (MemberRepositoryV3)
+alter table member add column if not exists version bigint default 0 not null;
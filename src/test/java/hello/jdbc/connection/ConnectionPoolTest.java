@@ -0,0 +1,121 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class ConnectionPoolTest {
+
+    ConnectionPool pool;
+
+    @BeforeEach
+    void beforeEach() {
+        pool = new ConnectionPool(new DriverManagerDataSource(URL, USERNAME, PASSWORD), 0, 1, 100, 50);
+    }
+
+    @AfterEach
+    void afterEach() {
+        pool.close();
+    }
+
+    @Test
+    void reusePhysicalConnection() throws SQLException {
+        Connection con1 = pool.getConnection();
+        Connection physical1 = con1.unwrap(Connection.class);
+        con1.close();
+        assertThat(con1.isClosed()).isTrue();
+
+        Connection con2 = pool.getConnection();
+        assertThat(con2.unwrap(Connection.class)).isSameAs(physical1);
+        assertThat(pool.getTotalConnections()).isEqualTo(1);
+        con2.close();
+    }
+
+    @Test
+    void acquireTimeout() throws SQLException {
+        Connection con1 = pool.getConnection();
+
+        assertThatThrownBy(() -> pool.getConnection())
+                .isInstanceOf(SQLTimeoutException.class);
+
+        con1.close();
+    }
+
+    @Test
+    void validateOnBorrow() throws SQLException {
+        Connection con1 = pool.getConnection();
+        Connection physical1 = con1.unwrap(Connection.class);
+        con1.close();
+        physical1.close(); // 풀에 있는 동안 끊어진 커넥션
+
+        Connection con2 = pool.getConnection();
+        assertThat(con2.unwrap(Connection.class)).isNotSameAs(physical1);
+        assertThat(pool.getTotalConnections()).isEqualTo(1);
+        con2.close();
+    }
+
+    @Test
+    void evictIdle() throws SQLException, InterruptedException {
+        Connection con1 = pool.getConnection();
+        con1.close();
+
+        Thread.sleep(100);
+        pool.evictIdle();
+        assertThat(pool.getTotalConnections()).isEqualTo(0);
+    }
+
+    @Test
+    void warmUpMinIdle() throws SQLException, InterruptedException {
+        ConnectionPool warmPool = new ConnectionPool(new DriverManagerDataSource(URL, USERNAME, PASSWORD), 2, 3, 100, 50);
+        try {
+            //생성할 때 minIdle 만큼 미리 만든다.
+            assertThat(warmPool.getIdleConnections()).isEqualTo(2);
+
+            //빌려가도 오래된 유휴 커넥션 정리는 유휴 minIdle 개를 남긴다.
+            Connection con1 = warmPool.getConnection();
+            warmPool.fillIdle();
+            assertThat(warmPool.getIdleConnections()).isEqualTo(2);
+            Thread.sleep(100);
+            warmPool.evictIdle();
+            assertThat(warmPool.getIdleConnections()).isEqualTo(2);
+            assertThat(warmPool.getTotalConnections()).isEqualTo(3);
+            con1.close();
+
+            warmPool.evictIdle();
+            assertThat(warmPool.getIdleConnections()).isEqualTo(2);
+        } finally {
+            warmPool.close();
+        }
+    }
+
+    @Test
+    void resetOnGiveBack() throws SQLException {
+        Connection con1 = pool.getConnection();
+        Connection physical = con1.unwrap(Connection.class);
+        int defaultIsolation = con1.getTransactionIsolation();
+        con1.setReadOnly(true);
+        con1.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        con1.close();
+
+        assertThat(physical.isReadOnly()).isFalse();
+        assertThat(physical.getTransactionIsolation()).isEqualTo(defaultIsolation);
+    }
+
+    @Test
+    void usernamePasswordNotSupported() {
+        assertThatThrownBy(() -> pool.getConnection("sa", ""))
+                .isInstanceOf(SQLFeatureNotSupportedException.class);
+    }
+}
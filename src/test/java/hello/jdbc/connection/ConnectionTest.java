@@ -51,10 +51,11 @@ public class ConnectionTest {
 
     private void useDataSource(DataSource dataSource) throws SQLException {
 
-        Connection con1 = dataSource.getConnection();
-        Connection con2 = dataSource.getConnection();
+        try (Connection con1 = dataSource.getConnection();
+             Connection con2 = dataSource.getConnection()) {
 
-        log.info("connection={}, class={}", con1, con1.getClass());
-        log.info("connection={}, class={}", con2, con2.getClass());
+            log.info("connection={}, class={}", con1, con1.getClass());
+            log.info("connection={}, class={}", con2, con2.getClass());
+        }
     }
 }
@@ -0,0 +1,123 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.metrics.SimpleMetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 내장 H2 커넥션을 닫지 않고 들고 있으면서 누수/포화 진단 확인
+ */
+@Slf4j
+class LeakDetectionDataSourceTest {
+
+    SimpleMetricsRegistry registry;
+    ConnectionPool pool;
+    LeakDetectionDataSource dataSource;
+
+    @BeforeEach
+    void beforeEach() {
+        registry = new SimpleMetricsRegistry();
+        pool = new ConnectionPool(new DriverManagerDataSource("jdbc:h2:mem:leak;DB_CLOSE_DELAY=-1", "sa", ""),
+                0, 2, 100, 60_000);
+        dataSource = new LeakDetectionDataSource(pool, 100, 2, registry);
+    }
+
+    @AfterEach
+    void afterEach() {
+        dataSource.close();
+        pool.close();
+        registry.report();
+    }
+
+    @Test
+    @DisplayName("close 하면 추적에서 빠지고 사용 시간이 기록된다")
+    void release() throws SQLException {
+        //when
+        Connection con = dataSource.getConnection();
+        con.close();
+        con.close(); // 두 번 닫아도 한번만 반납
+
+        //then
+        assertThat(con.isClosed()).isTrue();
+        assertThat(dataSource.getActiveCount()).isZero();
+        assertThat(registry.timer("jdbc.borrow.wait").getCount()).isEqualTo(1);
+        assertThat(registry.timer("jdbc.borrow.held").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("threshold 보다 오래 잡고 있으면 빌린 스택과 함께 누수로 보고")
+    void leak() throws Exception {
+        //given
+        Connection con = dataSource.getConnection();
+
+        //when
+        Thread.sleep(150);
+        dataSource.checkLeaks();
+
+        //then
+        assertThat(dataSource.getLeakCount()).isEqualTo(1);
+        assertThat(registry.counter("jdbc.borrow.leak").getCount()).isEqualTo(1);
+        assertThat(dataSource.dumpBorrows()).contains("LeakDetectionDataSourceTest.leak");
+
+        dataSource.checkLeaks(); // 같은 커넥션은 한번만 보고
+        assertThat(dataSource.getLeakCount()).isEqualTo(1);
+        con.close();
+        assertThat(dataSource.getActiveCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("풀이 포화되면 빌려간 곳을 보고")
+    void saturation() throws SQLException {
+        //when
+        Connection con1 = dataSource.getConnection();
+        Connection con2 = dataSource.getConnection(); // active=2, max=2 - 딱 찬 것은 포화가 아니다.
+        assertThat(dataSource.getSaturationCount()).isZero();
+        assertThatThrownBy(() -> dataSource.getConnection())
+                .isInstanceOf(SQLTimeoutException.class);
+
+        //then
+        assertThat(dataSource.getSaturationCount()).isEqualTo(1);
+        assertThat(dataSource.getActiveCount()).isEqualTo(2);
+        con1.close();
+        con2.close();
+    }
+
+    @Test
+    @DisplayName("반납을 기다려서 획득한 것도 포화로 센다")
+    void blockedAcquire() throws Exception {
+        //given
+        Connection con1 = dataSource.getConnection();
+        Connection con2 = dataSource.getConnection();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            //when
+            executor.schedule(() -> {
+                con1.close();
+                return null;
+            }, 20, TimeUnit.MILLISECONDS);
+            Connection con3 = dataSource.getConnection();
+
+            //then
+            assertThat(dataSource.getSaturationCount()).isEqualTo(1);
+            con3.close();
+        } finally {
+            executor.shutdown();
+            con2.close();
+        }
+    }
+}
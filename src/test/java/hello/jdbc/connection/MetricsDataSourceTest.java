@@ -0,0 +1,109 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.metrics.SimpleMetricsRegistry;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.service.MemberServiceV3_3;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 내장 H2 를 MetricsDataSource 로 감싸서 기록된 지표 확인
+ */
+@Slf4j
+class MetricsDataSourceTest {
+
+    DataSource target;
+    SimpleMetricsRegistry registry;
+    MetricsDataSource dataSource;
+    MemberRepositoryV3 repository;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        target = new DriverManagerDataSource("jdbc:h2:mem:metrics;DB_CLOSE_DELAY=-1", "sa", "");
+        execute(target, "create table member (member_id varchar(10), money integer not null default 0, " +
+                "version bigint not null default 0, primary key (member_id))");
+        registry = new SimpleMetricsRegistry();
+        dataSource = new MetricsDataSource(target, registry);
+        repository = new MemberRepositoryV3(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        registry.report();
+        execute(target, "drop table member");
+    }
+
+    @Test
+    @DisplayName("sql 종류별 실행 시간과 변경 건수")
+    void statementMetrics() throws SQLException {
+        //when
+        repository.save(new Member("memberA", 10000));
+        repository.findById("memberA");
+        repository.update("memberA", 20000);
+
+        //then
+        assertThat(registry.timer("jdbc.insert.member").getCount()).isEqualTo(1);
+        assertThat(registry.timer("jdbc.select.member").getCount()).isEqualTo(1);
+        assertThat(registry.timer("jdbc.update.member").getCount()).isEqualTo(1);
+        assertThat(registry.counter("jdbc.update.member.rows").getCount()).isEqualTo(1);
+        assertThat(registry.timer("jdbc.connection.acquire").getCount()).isEqualTo(3);
+        assertThat(registry.timer("jdbc.connection.usage").getCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("트랜잭션 시간과 커밋/롤백 건수")
+    void transactionMetrics() throws SQLException {
+        //given
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 10000));
+        MemberServiceV3_3 memberService = new MemberServiceV3_3(
+                new DataSourceTransactionManager(dataSource), repository, null, registry);
+
+        //when
+        memberService.accountTransfer("memberA", "memberB", 2000);
+        assertThatThrownBy(() -> memberService.accountTransfer("memberA", "memberB", 1_000_000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(registry.counter("jdbc.commit").getCount()).isEqualTo(1);
+        assertThat(registry.counter("jdbc.rollback").getCount()).isEqualTo(1);
+        assertThat(registry.timer("jdbc.transaction").getCount()).isEqualTo(2);
+        assertThat(registry.timer("service.v3_3.accountTransfer").getCount()).isEqualTo(2);
+        assertThat(registry.counter("service.v3_3.accountTransfer.failure").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("sql 로 지표 이름 만들기")
+    void operationName() {
+        assertThat(MetricsDataSource.operationName("select * from member where member_id = ?"))
+                .isEqualTo("jdbc.select.member");
+        assertThat(MetricsDataSource.operationName("insert into member(member_id, money) values(?, ?)"))
+                .isEqualTo("jdbc.insert.member");
+        assertThat(MetricsDataSource.operationName("update member set money=? where member_id=?"))
+                .isEqualTo("jdbc.update.member");
+        assertThat(MetricsDataSource.operationName("delete from member where member_id=?"))
+                .isEqualTo("jdbc.delete.member");
+        assertThat(MetricsDataSource.operationName("call now()")).isEqualTo("jdbc.other");
+    }
+
+    private static void execute(DataSource dataSource, String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 복제 없이 독립된 내장 H2 두 개(이상)를 primary/replica 로 사용
+ * replica 에 다른 잔액을 넣어 두고 어느 쪽에서 읽었는지 확인한다.
+ */
+@Slf4j
+class ReadWriteRoutingDataSourceTest {
+
+    public static final String MEMBER_ID = "member1";
+
+    DataSource primary;
+    DataSource replica1;
+    DataSource replica2;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        primary = memoryDataSource("routing_primary", 10000);
+        replica1 = memoryDataSource("routing_replica1", 9000);
+        replica2 = memoryDataSource("routing_replica2", 8000);
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        for (DataSource dataSource : List.of(primary, replica1, replica2)) {
+            execute(dataSource, "drop table member");
+        }
+    }
+
+    @Test
+    @DisplayName("트랜잭션 밖 조회는 replica, 쓰기는 primary")
+    void routeReadToReplica() throws SQLException {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, List.of(replica1));
+        MemberRepositoryV3 repository = new MemberRepositoryV3(routing);
+
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(9000);
+
+        repository.update(MEMBER_ID, 20000);
+        assertThat(new MemberRepositoryV3(primary).findById(MEMBER_ID).getMoney()).isEqualTo(20000);
+        assertThat(routing.getReplicaCount()).isEqualTo(1);
+        assertThat(routing.getPrimaryCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("읽기 전용 트랜잭션은 replica, 일반 트랜잭션 안의 조회는 primary")
+    void routeReadOnlyTransaction() {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, List.of(replica1));
+        MemberRepositoryV3 repository = new MemberRepositoryV3(routing);
+        RoutingDataSourceTransactionManager transactionManager = new RoutingDataSourceTransactionManager(routing);
+
+        TransactionTemplate readOnlyTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTemplate.setReadOnly(true);
+        Integer readOnlyMoney = readOnlyTemplate.execute(status -> findMoney(repository));
+
+        Integer money = new TransactionTemplate(transactionManager).execute(status -> findMoney(repository));
+
+        assertThat(readOnlyMoney).isEqualTo(9000);
+        assertThat(money).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("replica 가 여러 개면 번갈아 사용")
+    void roundRobin() throws SQLException {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, List.of(replica1, replica2));
+        MemberRepositoryV3 repository = new MemberRepositoryV3(routing);
+
+        Set<Integer> moneys = new HashSet<>();
+        moneys.add(repository.findById(MEMBER_ID).getMoney());
+        moneys.add(repository.findById(MEMBER_ID).getMoney());
+
+        assertThat(moneys).containsExactlyInAnyOrder(9000, 8000);
+    }
+
+    @Test
+    @DisplayName("read-your-writes - 쓰고 난 뒤 stickyMillis 동안은 primary 에서 읽는다")
+    void stickyAfterWrite() throws SQLException {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, List.of(replica1), 60_000);
+        MemberRepositoryV3 repository = new MemberRepositoryV3(routing);
+
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(9000);
+        repository.update(MEMBER_ID, 20000);
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    @DisplayName("read-your-writes - primary 에서 조회만 한 것은 sticky 가 아니고, 구간이 지나면 다시 replica")
+    void stickyOnlyAfterRealWrite() throws Exception {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, List.of(replica1), 100);
+        MemberRepositoryV3 repository = new MemberRepositoryV3(routing);
+        RoutingDataSourceTransactionManager transactionManager = new RoutingDataSourceTransactionManager(routing);
+
+        //일반 트랜잭션에서 조회만 - primary 를 쓰지만 쓰기가 아니다.
+        Integer money = new TransactionTemplate(transactionManager).execute(status -> findMoney(repository));
+        assertThat(money).isEqualTo(10000);
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(9000);
+
+        //쓰기가 있는 트랜잭션을 커밋하면 sticky
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                repository.update(MEMBER_ID, 20000);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(20000);
+
+        //구간이 지나면 replica
+        Thread.sleep(150);
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(9000);
+    }
+
+    @Test
+    @DisplayName("사용자/비밀번호를 주는 getConnection 도 같은 규칙으로 라우팅")
+    void routeWithCredentials() throws SQLException {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, List.of(replica1));
+
+        try (ReadWriteRoutingDataSource.Hint hint = ReadWriteRoutingDataSource.readOnly();
+             Connection con = routing.getConnection("sa", "")) {
+            assertThat(queryMoney(con)).isEqualTo(9000);
+        }
+        try (Connection con = routing.getConnection("sa", "")) {
+            assertThat(queryMoney(con)).isEqualTo(10000);
+        }
+    }
+
+    private static int queryMoney(Connection con) throws SQLException {
+        try (PreparedStatement pstmt = con.prepareStatement("select money from member where member_id = ?")) {
+            pstmt.setString(1, MEMBER_ID);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static Integer findMoney(MemberRepositoryV3 repository) {
+        try {
+            return repository.findById(MEMBER_ID).getMoney();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static DataSource memoryDataSource(String name, int money) throws SQLException {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        execute(dataSource, "create table member (member_id varchar(10), money integer not null default 0, " +
+                "version bigint not null default 0, primary key (member_id))");
+        new MemberRepositoryV3(dataSource).save(new Member(MEMBER_ID, money));
+        return dataSource;
+    }
+
+    private static void execute(DataSource dataSource, String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 내장 H2 를 SlowQueryDataSource 로 감싸서 확인 - threshold 0 이면 모든 쿼리가 느린 쿼리
+ */
+@Slf4j
+class SlowQueryDataSourceTest {
+
+    public static final String FIND_BY_ID = "select * from member where member_id = ?";
+
+    DataSource target;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        target = new DriverManagerDataSource("jdbc:h2:mem:slow_query;DB_CLOSE_DELAY=-1", "sa", "");
+        execute("create table member (member_id varchar(10), money integer not null default 0, " +
+                "version bigint not null default 0, primary key (member_id))");
+        new MemberRepositoryV3(target).save(new Member("memberA", 10000));
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        execute("drop table member");
+    }
+
+    @Test
+    @DisplayName("느린 쿼리 로그는 operation 별 간격에 한번만 남긴다")
+    void rateLimit() throws SQLException {
+        //given
+        SlowQueryDataSource dataSource = new SlowQueryDataSource(target, 0, 0, Map.of(), 60_000);
+        MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+
+        //when
+        repository.findById("memberA");
+        repository.findById("memberA");
+        repository.update("memberA", 20000);
+
+        //then
+        assertThat(dataSource.getSlowCount()).isEqualTo(3);
+        assertThat(dataSource.getLoggedCount()).isEqualTo(2); // select 1번, update 1번
+        assertThat(dataSource.getTimeoutCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("같은 파라미터로 EXPLAIN - 기본키 인덱스 사용")
+    void explain() throws SQLException {
+        SlowQueryDataSource.StatementPolicy policy = new SlowQueryDataSource(target, 0, 0).policyOf(FIND_BY_ID);
+
+        try (Connection con = target.getConnection()) {
+            String plan = SlowQueryDataSource.explain(con, policy, List.of("memberA"));
+            log.info("plan={}", plan);
+            assertThat(plan).containsIgnoringCase("PRIMARY_KEY");
+        }
+    }
+
+    @Test
+    @DisplayName("sql -> operation -> 기본값 순서로 쿼리 타임아웃 적용")
+    void queryTimeout() throws SQLException {
+        //given
+        String update = "update member set money=?, version=version+1 where member_id=?";
+        SlowQueryDataSource dataSource = new SlowQueryDataSource(target, 1000, 10,
+                Map.of("jdbc.select.member", 3, update, 1), SlowQueryDataSource.DEFAULT_LOG_INTERVAL_MILLIS);
+
+        //when
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement select = con.prepareStatement(FIND_BY_ID);
+             PreparedStatement updateStmt = con.prepareStatement(update);
+             PreparedStatement delete = con.prepareStatement("delete from member where member_id=?")) {
+
+            //then
+            assertThat(select.getQueryTimeout()).isEqualTo(3);
+            assertThat(updateStmt.getQueryTimeout()).isEqualTo(1);
+            assertThat(delete.getQueryTimeout()).isEqualTo(10);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection con = target.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
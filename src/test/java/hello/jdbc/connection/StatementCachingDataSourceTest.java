@@ -0,0 +1,129 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class StatementCachingDataSourceTest {
+
+    private static final String SQL = "select * from member where member_id = ?";
+
+    @BeforeEach
+    void beforeEach() {
+        TestSchema.init();
+    }
+
+    @Test
+    void reuseStatement() throws SQLException {
+        StatementCachingDataSource dataSource =
+                new StatementCachingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD), 4);
+
+        Connection con = dataSource.getConnection();
+        PreparedStatement pstmt1 = con.prepareStatement(SQL);
+        PreparedStatement physical = pstmt1.unwrap(PreparedStatement.class);
+        pstmt1.close();
+        assertThat(pstmt1.isClosed()).isTrue();
+
+        PreparedStatement pstmt2 = con.prepareStatement(SQL);
+        assertThat(pstmt2.unwrap(PreparedStatement.class)).isSameAs(physical);
+        assertThat(dataSource.getHitCount()).isEqualTo(1);
+        assertThat(dataSource.getMissCount()).isEqualTo(1);
+        pstmt2.close();
+
+        //커넥션을 닫으면 캐시된 statement 도 닫힌다.
+        con.close();
+        assertThat(physical.isClosed()).isTrue();
+    }
+
+    @Test
+    void resetStatementOnRelease() throws SQLException {
+        StatementCachingDataSource dataSource =
+                new StatementCachingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD), 4);
+
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement pstmt1 = con.prepareStatement(SQL);
+            int defaultFetchSize = pstmt1.getFetchSize(); // 0 을 주면 드라이버 기본값으로 돌아간다.
+            pstmt1.setQueryTimeout(5);
+            pstmt1.setFetchSize(100);
+            pstmt1.setMaxRows(10);
+            pstmt1.close();
+
+            //캐시에서 다시 꺼낸 statement 는 설정이 초기화되어 있다.
+            PreparedStatement pstmt2 = con.prepareStatement(SQL);
+            assertThat(dataSource.getHitCount()).isEqualTo(1);
+            assertThat(pstmt2.getQueryTimeout()).isZero();
+            assertThat(pstmt2.getFetchSize()).isEqualTo(defaultFetchSize);
+            assertThat(pstmt2.getMaxRows()).isZero();
+            pstmt2.close();
+        }
+    }
+
+    @Test
+    void clearAbandonedBatchOnRelease() throws SQLException {
+        String updateSql = "update member set money=? where member_id=?";
+        StatementCachingDataSource dataSource =
+                new StatementCachingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD), 4);
+        MemberRepositoryV3 repository = new MemberRepositoryV3(new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+        repository.save(new Member("batchA", 0));
+        repository.save(new Member("batchB", 0));
+
+        try (Connection con = dataSource.getConnection()) {
+            //배치를 쌓다가 실행하지 않고 반납
+            PreparedStatement abandoned = con.prepareStatement(updateSql);
+            abandoned.setInt(1, 999);
+            abandoned.setString(2, "batchA");
+            abandoned.addBatch();
+            abandoned.close();
+
+            //같은 sql 을 다시 꺼내 배치 실행 - 반납 전에 쌓인 row 는 실행되지 않는다.
+            PreparedStatement pstmt = con.prepareStatement(updateSql);
+            assertThat(dataSource.getHitCount()).isEqualTo(1);
+            pstmt.setInt(1, 500);
+            pstmt.setString(2, "batchB");
+            pstmt.addBatch();
+            assertThat(pstmt.executeBatch()).containsExactly(1);
+            pstmt.close();
+        } finally {
+            assertThat(repository.findById("batchA").getMoney()).isZero();
+            assertThat(repository.findById("batchB").getMoney()).isEqualTo(500);
+            repository.delete("batchA");
+            repository.delete("batchB");
+        }
+    }
+
+    @Test
+    void underConnectionPool() throws SQLException {
+        StatementCachingDataSource cachingDataSource =
+                new StatementCachingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD), 4);
+
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setDataSource(cachingDataSource);
+        dataSource.setMaximumPoolSize(1);
+        dataSource.setPoolName("CachingPool");
+
+        try {
+            MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+            repository.save(new Member("cache1", 10000));
+            repository.findById("cache1");
+            repository.findById("cache1");
+            repository.delete("cache1");
+
+            log.info("hit={} miss={}", cachingDataSource.getHitCount(), cachingDataSource.getMissCount());
+            assertThat(cachingDataSource.getHitCount()).isEqualTo(1);
+        } finally {
+            dataSource.close();
+        }
+    }
+}
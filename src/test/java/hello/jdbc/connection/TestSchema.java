@@ -0,0 +1,37 @@
+package hello.jdbc.connection;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+
+/**
+ * TCP H2(ConnectionConst.URL) 를 쓰는 테스트 전에 schema.sql 과 기능별 schema-*.sql 을 적용한다. JVM 에 한번만 실행
+ * 모두 if not exists 로 되어 있어서 기존 테이블은 그대로 두고 빠진 컬럼/테이블만 만든다.
+ */
+public abstract class TestSchema {
+
+    private static final String[] SCRIPTS = {
+            "schema.sql",
+            "schema-member-money-index.sql",
+            "schema-balance-shard.sql",
+            "schema-journal-checkpoint.sql",
+            "schema-transfer-ledger.sql",
+            "schema-shard-transfer.sql"
+    };
+
+    private static boolean initialized;
+
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        for (String script : SCRIPTS) {
+            populator.addScript(new ClassPathResource(script));
+        }
+        populator.execute(new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+        initialized = true;
+    }
+}
@@ -0,0 +1,144 @@
+package hello.jdbc.jfr;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.service.MemberServiceV3_1;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 내장 H2 로 이체하면서 JFR recording 에 남은 이벤트 확인
+ */
+@Slf4j
+class JdbcEventsTest {
+
+    DataSource dataSource;
+    MemberRepositoryV3 memberRepository;
+    MemberServiceV3_1 memberService;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:jfr;DB_CLOSE_DELAY=-1", "sa", "");
+        execute("create table member (member_id varchar(10), money integer not null default 0, " +
+                "version bigint not null default 0, primary key (member_id))");
+        memberRepository = new MemberRepositoryV3(dataSource);
+        memberService = new MemberServiceV3_1(new DataSourceTransactionManager(dataSource), memberRepository);
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        execute("drop table member");
+    }
+
+    @Test
+    @DisplayName("sql 실행과 commit/rollback 이 이벤트로 남는다")
+    void recordEvents() throws Exception {
+        //given
+        memberRepository.save(new Member("memberA", 10000));
+        memberRepository.save(new Member("memberB", 10000));
+        memberRepository.save(new Member("ex", 10000));
+
+        //when
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(StatementEvent.class).withoutThreshold();
+            recording.enable(TransactionEvent.class).withoutThreshold();
+            recording.start();
+
+            memberService.accountTransfer("memberA", "memberB", 2000);
+            assertThatThrownBy(() -> memberService.accountTransfer("memberA", "ex", 2000))
+                    .isInstanceOf(IllegalStateException.class);
+
+            recording.stop();
+            events = dump(recording);
+        }
+
+        //then
+        List<RecordedEvent> transactions = byName(events, "hello.jdbc.Transaction");
+        assertThat(transactions).hasSize(2);
+        assertThat(transactions).allSatisfy(event -> {
+            assertThat(event.getString("sqlId")).isEqualTo("v3_1.accountTransfer");
+            assertThat(event.getInt("memberIdHash")).isEqualTo("memberA".hashCode());
+            assertThat(event.getString("outcome")).isEqualTo(JdbcEvents.SUCCESS);
+        });
+        assertThat(transactions).extracting(event -> event.getString("action"))
+                .containsExactlyInAnyOrder(TransactionEvent.COMMIT, TransactionEvent.ROLLBACK);
+
+        List<RecordedEvent> statements = byName(events, "hello.jdbc.Statement");
+        assertThat(statements).extracting(event -> event.getString("sqlId"))
+                .containsOnly("member.findById", "member.update");
+        assertThat(statements).allSatisfy(event -> {
+            assertThat(event.getInt("rows")).isEqualTo(1);
+            assertThat(event.getString("outcome")).isEqualTo(JdbcEvents.SUCCESS);
+        });
+    }
+
+    @Test
+    @DisplayName("실패한 sql 은 error 로 남는다")
+    void recordError() throws Exception {
+        //given
+        memberRepository.save(new Member("memberA", 10000));
+
+        //when
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(StatementEvent.class).withoutThreshold();
+            recording.start();
+
+            assertThatThrownBy(() -> memberRepository.save(new Member("memberA", 10000)))
+                    .isInstanceOf(SQLException.class);
+
+            recording.stop();
+            events = dump(recording);
+        }
+
+        //then
+        List<RecordedEvent> statements = byName(events, "hello.jdbc.Statement");
+        assertThat(statements).hasSize(1);
+        assertThat(statements.get(0).getString("sqlId")).isEqualTo("member.save");
+        assertThat(statements.get(0).getString("outcome")).isEqualTo(JdbcEvents.ERROR);
+    }
+
+    private List<RecordedEvent> dump(Recording recording) throws IOException {
+        Path file = dir.resolve("jdbc.jfr");
+        recording.dump(file);
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static List<RecordedEvent> byName(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
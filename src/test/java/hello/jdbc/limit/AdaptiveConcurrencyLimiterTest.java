@@ -0,0 +1,189 @@
+package hello.jdbc.limit;
+
+import hello.jdbc.connection.ConcurrencyLimitingDataSource;
+import hello.jdbc.metrics.SimpleMetricsRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    static final long FAST = TimeUnit.MICROSECONDS.toNanos(100);
+    static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+    SimpleMetricsRegistry registry;
+
+    @BeforeEach
+    void beforeEach() {
+        registry = new SimpleMetricsRegistry();
+    }
+
+    @Test
+    @DisplayName("limit 만큼 실행 중이면 기다리지 않고 거절")
+    void reject() {
+        //given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 10, 2.0, registry);
+        AdaptiveConcurrencyLimiter.Permit permit1 = limiter.acquire();
+        AdaptiveConcurrencyLimiter.Permit permit2 = limiter.acquire();
+
+        //when
+        assertThatThrownBy(limiter::acquire)
+                .isInstanceOf(LimitExceededException.class);
+
+        //then
+        assertThat(registry.counter("test.rejected").getCount()).isEqualTo(1);
+        assertThat(registry.getGauge("test.inflight")).isEqualTo(2);
+        assertThat(registry.getGauge("test.limit")).isEqualTo(2);
+
+        permit1.close();
+        permit2.close();
+        permit2.close(); // 두 번 닫아도 한번만 반납
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    @DisplayName("느려지면 줄이고, 줄인 뒤 시작한 요청으로만 다시 줄인다")
+    void decreaseOnLatency() {
+        //given - 장기 평균이 FAST 가 될 때까지
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 100, 1, 200, 2.0, registry);
+        long now = 0;
+        for (int i = 0; i < 600; i++, now += FAST) {
+            limiter.onSample(now, now + FAST, 1, false);
+        }
+        int before = limiter.getLimit();
+
+        //when - 같은 시점에 시작한 느린 요청 열 건
+        long start = now;
+        for (int i = 0; i < 10; i++) {
+            limiter.onSample(start, start + SLOW + i, 100, false);
+        }
+
+        //then
+        assertThat(limiter.getLimit()).isEqualTo((int) (before * 0.9));
+
+        limiter.onSample(start + SLOW + 10, start + SLOW * 3, 100, false);
+        assertThat(limiter.getLimit()).isLessThan((int) (before * 0.9));
+    }
+
+    @Test
+    @DisplayName("짧은 조회와 긴 트랜잭션이 섞여 있어도 DB 가 그대로면 limit 을 유지하고, 전체가 느려지면 줄인다")
+    void mixedLatency() {
+        //given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 100, 1, 200, 2.0, registry);
+        long now = 0;
+
+        //when - 10 건 중 2 건은 커넥션을 오래 잡는 트랜잭션
+        for (int i = 0; i < 5000; i++) {
+            long rtt = i % 10 >= 8 ? SLOW : FAST;
+            limiter.onSample(now, now + rtt, 50, false);
+            now += rtt;
+
+            //then
+            assertThat(limiter.getLimit()).isGreaterThanOrEqualTo(100);
+        }
+
+        //when - 모든 요청이 느려짐
+        for (int i = 0; i < 100; i++, now += SLOW * 3) {
+            limiter.onSample(now, now + SLOW * 3, 50, false);
+        }
+
+        //then
+        assertThat(limiter.getLimit()).isLessThan(100);
+    }
+
+    @Test
+    @DisplayName("maxHold 보다 오래 반납하지 않은 허가는 limit 에 걸렸을 때 회수")
+    void expireLeaked() throws InterruptedException {
+        //given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 10, 2.0, 50, registry);
+        AdaptiveConcurrencyLimiter.Permit leaked = limiter.acquire();
+        assertThatThrownBy(limiter::acquire)
+                .isInstanceOf(LimitExceededException.class);
+
+        //when
+        Thread.sleep(100);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+
+        //then
+        assertThat(registry.counter("test.expired").getCount()).isEqualTo(1);
+        assertThat(limiter.getInflight()).isEqualTo(1);
+
+        leaked.close(); // 이미 회수된 허가 - 다시 반납하지 않고 표본도 남기지 않는다.
+        assertThat(limiter.getInflight()).isEqualTo(1);
+        permit.close();
+        assertThat(limiter.getInflight()).isZero();
+        assertThat(registry.timer("test.rtt").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("타임아웃이면 지연시간과 상관없이 줄인다")
+    void decreaseOnDrop() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 200, 2.0, registry);
+
+        limiter.onSample(0, FAST, 10, true);
+
+        assertThat(limiter.getLimit()).isEqualTo(9);
+    }
+
+    @Test
+    @DisplayName("빠르고 limit 절반 이상 쓰고 있을 때만 늘린다")
+    void increase() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 200, 2.0, registry);
+
+        // 여유 있게 쓰는 중 - 그대로
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(i * FAST, (i + 1) * FAST, 1, false);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(10);
+
+        // 거의 다 쓰는 중 - limit 만큼 끝날 때마다 1 씩
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(i * FAST, (i + 1) * FAST, 10, false);
+        }
+        assertThat(limiter.getLimit()).isGreaterThan(10);
+    }
+
+    @Test
+    @DisplayName("execute - SQLTimeoutException 은 혼잡으로 보고 limit 을 줄인다")
+    void execute() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 200, 2.0, registry);
+
+        assertThatThrownBy(() -> limiter.execute(() -> {
+            throw new SQLTimeoutException("query timeout");
+        })).isInstanceOf(SQLTimeoutException.class);
+
+        assertThat(limiter.getLimit()).isEqualTo(9);
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    @DisplayName("DataSource - limit 을 넘는 커넥션 요청은 풀에서 기다리지 않고 거절")
+    void dataSource() throws SQLException {
+        //given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("jdbc.limit", 1, 1, 10, 2.0, registry);
+        ConcurrencyLimitingDataSource dataSource = new ConcurrencyLimitingDataSource(
+                new DriverManagerDataSource("jdbc:h2:mem:limit;DB_CLOSE_DELAY=-1", "sa", ""), limiter);
+
+        //when
+        try (Connection con = dataSource.getConnection()) {
+            assertThatThrownBy(dataSource::getConnection)
+                    .isInstanceOf(LimitExceededException.class);
+        }
+
+        //then
+        try (Connection con = dataSource.getConnection()) {
+            assertThat(limiter.getInflight()).isEqualTo(1);
+        }
+        assertThat(limiter.getInflight()).isZero();
+        assertThat(registry.timer("jdbc.limit.rtt").getCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,144 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.TestSchema;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class CachedMemberRepositoryV3Test {
+
+    public static final String MEMBER1 = "member1";
+    public static final String MEMBER2 = "member2";
+
+    CachedMemberRepositoryV3 repository;
+    TransactionTemplate txTemplate;
+    // 다음 커넥션 획득 시 한번 실행 - DB 조회 도중에 끼어드는 수정 재현
+    AtomicReference<Callback> onGetConnection = new AtomicReference<>();
+
+    @BeforeEach
+    void beforeEach() {
+        TestSchema.init();
+        DelegatingDataSource dataSource = new DelegatingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD)) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                Callback callback = onGetConnection.getAndSet(null);
+                if (callback != null) {
+                    callback.run();
+                }
+                return super.getConnection();
+            }
+        };
+        repository = new CachedMemberRepositoryV3(dataSource, 1, 1, TimeUnit.MINUTES);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        repository.delete(MEMBER1);
+        repository.delete(MEMBER2);
+    }
+
+    @Test
+    @DisplayName("조회 캐시 - 히트, 수정시 무효화")
+    void readThroughAndInvalidate() throws SQLException {
+        repository.save(new Member(MEMBER1, 10000));
+
+        repository.findById(MEMBER1);
+        repository.findById(MEMBER1);
+        assertThat(repository.getMissCount()).isEqualTo(1);
+        assertThat(repository.getHitCount()).isEqualTo(1);
+
+        repository.update(MEMBER1, 20000);
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(20000);
+        assertThat(repository.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("조회 캐시 - 크기 제한")
+    void evictEldest() throws SQLException {
+        repository.save(new Member(MEMBER1, 10000));
+        repository.save(new Member(MEMBER2, 20000));
+
+        repository.findById(MEMBER1);
+        repository.findById(MEMBER2);
+        assertThat(repository.size()).isEqualTo(1);
+
+        repository.findById(MEMBER1);
+        assertThat(repository.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("트랜잭션 안에서는 캐시를 사용하지 않는다")
+    void bypassInTransaction() throws SQLException {
+        repository.save(new Member(MEMBER1, 10000));
+        repository.findById(MEMBER1);
+
+        txTemplate.executeWithoutResult(status -> {
+            try {
+                repository.update(MEMBER1, 20000);
+                assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(20000);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("없는 회원 캐시 - 저장하면 무효화")
+    void negativeCache() throws SQLException {
+        assertThat(repository.findOptionalById(MEMBER1)).isEmpty();
+        assertThat(repository.findOptionalById(MEMBER1)).isEmpty();
+        assertThat(repository.getNegativeHitCount()).isEqualTo(1);
+
+        repository.save(new Member(MEMBER1, 10000));
+        assertThat(repository.findOptionalById(MEMBER1)).isPresent();
+    }
+
+    @Test
+    @DisplayName("조회 중 같은 회원이 수정되면 조회 결과를 캐시하지 않는다")
+    void skipCacheWhenInvalidatedDuringLoad() throws SQLException {
+        repository.save(new Member(MEMBER1, 10000));
+
+        onGetConnection.set(() -> repository.update(MEMBER1, 20000));
+        repository.findById(MEMBER1);
+
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(20000);
+        assertThat(repository.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("조회 중 다른 회원이 수정되어도 조회 결과는 캐시한다")
+    void cacheWhenOtherInvalidatedDuringLoad() throws SQLException {
+        repository.save(new Member(MEMBER1, 10000));
+        repository.save(new Member(MEMBER2, 20000));
+
+        onGetConnection.set(() -> repository.update(MEMBER2, 30000));
+        repository.findById(MEMBER1);
+
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(10000);
+        assertThat(repository.getHitCount()).isEqualTo(1);
+    }
+
+    interface Callback {
+        void run() throws SQLException;
+    }
+}
@@ -0,0 +1,229 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.TestSchema;
+import hello.jdbc.domain.Member;
+import hello.jdbc.service.MemberServiceV3_2;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class HotAccountMemberRepositoryV3Test {
+
+    public static final String MEMBER1 = "member1";
+    public static final String MEMBER2 = "member2";
+
+    HotAccountMemberRepositoryV3 repository;
+    DataSourceTransactionManager transactionManager;
+    TransactionTemplate txTemplate;
+
+    @BeforeEach
+    void beforeEach() {
+        TestSchema.init();
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        repository = new HotAccountMemberRepositoryV3(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        txTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        repository.delete(MEMBER1);
+        repository.delete(MEMBER2);
+    }
+
+    @Test
+    @DisplayName("분산 입금 합산, 모자라면 하위 row 를 모아서 출금")
+    void creditAndDebit() throws SQLException {
+        repository.save(new Member(MEMBER1, 1000));
+        repository.enableShardedBalance(MEMBER1, 4);
+
+        for (int i = 0; i < 10; i++) {
+            repository.credit(MEMBER1, 100);
+        }
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(2000);
+
+        //member row 에는 1000 뿐이므로 하위 row 를 모아야 한다.
+        txTemplate.executeWithoutResult(status -> {
+            try {
+                repository.debit(MEMBER1, 1500);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(500);
+
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            try {
+                repository.debit(MEMBER1, 1000);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(500);
+    }
+
+    @Test
+    @DisplayName("조회/잠금 조회 모두 하위 row 를 합산한다")
+    void readsIncludeShards() throws SQLException {
+        repository.save(new Member(MEMBER1, 1000));
+        repository.save(new Member(MEMBER2, 1000));
+        repository.enableShardedBalance(MEMBER1, 4);
+        repository.credit(MEMBER1, 500);
+
+        assertThat(repository.findByIds(List.of(MEMBER1, MEMBER2)).get(MEMBER1).getMoney()).isEqualTo(1500);
+        try (Stream<Member> stream = repository.findByMoneyRange(1200, 2000)) {
+            assertThat(stream.map(Member::getMemberId)).contains(MEMBER1).doesNotContain(MEMBER2);
+        }
+        Integer locked = txTemplate.execute(status -> {
+            try {
+                return repository.findByIdForUpdate(MEMBER1).getMoney();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(locked).isEqualTo(1500);
+    }
+
+    @Test
+    @DisplayName("입금은 합산 version 을 올리고, 트랜잭션 밖 잔액 지정은 로컬 트랜잭션으로 실행")
+    void creditBumpsVersion() throws SQLException {
+        repository.save(new Member(MEMBER1, 1000));
+        repository.enableShardedBalance(MEMBER1, 4);
+        long version = repository.findById(MEMBER1).getVersion();
+
+        repository.credit(MEMBER1, 100);
+
+        assertThat(repository.findById(MEMBER1).getVersion()).isEqualTo(version + 1);
+        assertThat(repository.updateWithVersion(MEMBER1, 0, version)).isFalse();
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(1100);
+
+        repository.update(MEMBER1, 500);
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(500);
+        repository.credit(MEMBER1, 100);
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(600);
+    }
+
+    @Test
+    @DisplayName("같은 회원 입금끼리는 서로 기다리지 않는다 - 커밋 전 입금이 있어도 다른 하위 row 로 입금")
+    void creditsDoNotBlock() throws Exception {
+        //given
+        int shards = 4;
+        repository.save(new Member(MEMBER1, 1000));
+        repository.enableShardedBalance(MEMBER1, shards);
+
+        CountDownLatch credited = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService holder = Executors.newSingleThreadExecutor();
+        AtomicLong holderThreadId = new AtomicLong();
+        Future<?> open = holder.submit(() -> txTemplate.executeWithoutResult(status -> {
+            try {
+                holderThreadId.set(Thread.currentThread().getId());
+                repository.credit(MEMBER1, 100);
+                credited.countDown();
+                finish.await(10, TimeUnit.SECONDS);
+            } catch (SQLException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertThat(credited.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //when - 커밋하지 않은 입금과 다른 하위 row 로 가는 스레드에서 입금
+        FutureTask<Void> credit = new FutureTask<>(() -> {
+            repository.credit(MEMBER1, 10);
+            return null;
+        });
+        Thread thread = new Thread(credit);
+        while (thread.getId() % shards == holderThreadId.get() % shards) {
+            thread = new Thread(credit);
+        }
+        long start = System.nanoTime();
+        thread.start();
+
+        //then - 앞의 트랜잭션이 열려 있는 동안 끝난다.
+        credit.get(5, TimeUnit.SECONDS);
+        assertThat(open.isDone()).isFalse();
+        finish.countDown();
+        open.get(5, TimeUnit.SECONDS);
+        holder.shutdown();
+        log.info("credit while another credit is open {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(1110);
+    }
+
+    @Test
+    @DisplayName("분산된 회원의 낙관적/비관적 락 이체 - 하위 row 잔액이 사라지거나 두 번 더해지지 않는다")
+    void transferWithShardedMember() throws Exception {
+        //given
+        MemberServiceV3_2 memberService = new MemberServiceV3_2(transactionManager, repository);
+        repository.save(new Member(MEMBER1, 1000));
+        repository.save(new Member(MEMBER2, 1000));
+        repository.enableShardedBalance(MEMBER1, 4);
+        for (int i = 0; i < 10; i++) {
+            repository.credit(MEMBER1, 100);
+        }
+
+        //when
+        memberService.accountTransferOptimistic(MEMBER1, MEMBER2, 500);
+        memberService.accountTransferPessimistic(MEMBER2, MEMBER1, 300);
+
+        //then
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(1800);
+        assertThat(repository.findById(MEMBER2).getMoney()).isEqualTo(1200);
+    }
+
+    @Test
+    @DisplayName("입금과 낙관적/비관적 락 이체가 동시에 일어나도 합계 유지")
+    void concurrentCreditAndTransfer() throws Exception {
+        //given
+        MemberServiceV3_2 memberService = new MemberServiceV3_2(transactionManager, repository);
+        repository.save(new Member(MEMBER1, 10000));
+        repository.save(new Member(MEMBER2, 10000));
+        repository.enableShardedBalance(MEMBER1, 4);
+
+        //when - 입금 100번, 1->2 낙관적 이체 50번, 2->1 비관적 이체 50번
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int kind = i % 4;
+            futures.add(executor.submit(() -> {
+                if (kind < 2) {
+                    repository.credit(MEMBER1, 10);
+                } else if (kind == 2) {
+                    memberService.accountTransferOptimistic(MEMBER1, MEMBER2, 10);
+                } else {
+                    memberService.accountTransferPessimistic(MEMBER2, MEMBER1, 10);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        //then
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(10000 + 100 * 10);
+        assertThat(repository.findById(MEMBER2).getMoney()).isEqualTo(10000);
+    }
+}
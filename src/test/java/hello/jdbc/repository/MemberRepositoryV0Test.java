@@ -36,5 +36,6 @@ class MemberRepositoryV0Test {
         repository.delete(memberV0.getMemberId());
         assertThatThrownBy(() -> repository.findById(memberV0.getMemberId()))
                 .isInstanceOf(NoSuchElementException.class);
+        assertThat(repository.findOptionalById(memberV0.getMemberId())).isEmpty();
     }
 }
\ No newline at end of file
@@ -55,6 +55,7 @@ class MemberRepositoryV1Test {
         repository.delete(memberV0.getMemberId());
         assertThatThrownBy(() -> repository.findById(memberV0.getMemberId()))
                 .isInstanceOf(NoSuchElementException.class);
+        assertThat(repository.findOptionalById(memberV0.getMemberId())).isEmpty();
 
         Thread.sleep(1000);
     }
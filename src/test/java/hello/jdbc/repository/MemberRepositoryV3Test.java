@@ -0,0 +1,117 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.TestSchema;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class MemberRepositoryV3Test {
+
+    public static final String MEMBER1 = "member1";
+    public static final String MEMBER2 = "member2";
+    public static final String MEMBER3 = "member3";
+
+    MemberRepositoryV3 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        TestSchema.init();
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        // 배치 경계를 확인하기 위해 batchSize 를 작게
+        repository = new MemberRepositoryV3(dataSource, 2);
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        repository.delete(MEMBER1);
+        repository.delete(MEMBER2);
+        repository.delete(MEMBER3);
+    }
+
+    @Test
+    @DisplayName("배치 저장/수정")
+    void saveAllAndUpdateAll() throws SQLException {
+        //saveAll
+        int[] saved = repository.saveAll(List.of(
+                new Member(MEMBER1, 10000),
+                new Member(MEMBER2, 20000),
+                new Member(MEMBER3, 30000)));
+        assertThat(saved).containsExactly(1, 1, 1);
+        assertThat(repository.findById(MEMBER3).getMoney()).isEqualTo(30000);
+
+        //updateAll - 없는 회원은 0
+        Map<String, Integer> moneyByMemberId = new LinkedHashMap<>();
+        moneyByMemberId.put(MEMBER1, 11000);
+        moneyByMemberId.put("none", 0);
+        moneyByMemberId.put(MEMBER3, 33000);
+        int[] updated = repository.updateAll(moneyByMemberId);
+        assertThat(updated).containsExactly(1, 0, 1);
+
+        assertThat(repository.findById(MEMBER1).getMoney()).isEqualTo(11000);
+        assertThat(repository.findById(MEMBER2).getMoney()).isEqualTo(20000);
+        assertThat(repository.findById(MEMBER3).getMoney()).isEqualTo(33000);
+    }
+
+    @Test
+    @DisplayName("스트리밍 조회")
+    void findByMoneyRange() throws SQLException {
+        repository.saveAll(List.of(
+                new Member(MEMBER1, 10000),
+                new Member(MEMBER2, 20000),
+                new Member(MEMBER3, 30000)));
+
+        try (Stream<Member> members = repository.findByMoneyRange(15000, 30000, 1)) {
+            List<String> memberIds = members
+                    .map(Member::getMemberId)
+                    .filter(memberId -> memberId.startsWith("member"))
+                    .collect(Collectors.toList());
+            assertThat(memberIds).contains(MEMBER2, MEMBER3).doesNotContain(MEMBER1);
+        }
+    }
+
+    @Test
+    @DisplayName("키셋 페이지 조회")
+    void findPageAfter() throws SQLException {
+        repository.saveAll(List.of(
+                new Member(MEMBER1, 30000),
+                new Member(MEMBER2, 20000),
+                new Member(MEMBER3, 20000)));
+
+        List<Member> page = repository.findPageAfter(MEMBER1, 2);
+        assertThat(page).extracting(Member::getMemberId).containsExactly(MEMBER2, MEMBER3);
+
+        // 공유 DB 라서 다른 테스트의 회원은 빼고 순서까지 확인
+        List<Member> moneyPage = repository.findPageAfterMoney(20000, MEMBER2, 10);
+        assertThat(moneyPage).extracting(Member::getMemberId)
+                .filteredOn(memberId -> List.of(MEMBER1, MEMBER2, MEMBER3).contains(memberId))
+                .containsExactly(MEMBER3, MEMBER1);
+    }
+
+    @Test
+    @DisplayName("여러 회원 조회 - 없는 회원은 결과에서 빠진다")
+    void findByIds() throws SQLException {
+        repository.saveAll(List.of(
+                new Member(MEMBER1, 10000),
+                new Member(MEMBER2, 20000)));
+
+        Map<String, Member> result = repository.findByIds(List.of(MEMBER1, MEMBER2, "none", MEMBER1));
+
+        assertThat(result).containsOnlyKeys(MEMBER1, MEMBER2);
+        assertThat(result.get(MEMBER2).getMoney()).isEqualTo(20000);
+    }
+}
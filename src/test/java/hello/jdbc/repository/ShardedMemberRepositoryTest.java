@@ -0,0 +1,146 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 내장 H2 세 개를 샤드로 사용
+ */
+@Slf4j
+class ShardedMemberRepositoryTest {
+
+    private static final int SHARD_COUNT = 3;
+
+    List<DataSource> dataSources = new ArrayList<>();
+    ShardedMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:shard" + i + ";DB_CLOSE_DELAY=-1", "sa", "");
+            execute(dataSource, "create table member (member_id varchar(10), money integer not null default 0, " +
+                    "version bigint not null default 0, primary key (member_id))");
+            dataSources.add(dataSource);
+        }
+        repository = new ShardedMemberRepository(dataSources);
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        repository.close();
+        for (DataSource dataSource : dataSources) {
+            execute(dataSource, "drop table member");
+        }
+    }
+
+    @Test
+    @DisplayName("일관된 해시 - 샤드를 늘려도 대부분의 키는 그대로")
+    void consistentHash() {
+        ConsistentHash three = new ConsistentHash(3);
+        ConsistentHash four = new ConsistentHash(4);
+
+        int[] counts = new int[3];
+        int moved = 0;
+        for (int i = 0; i < 10000; i++) {
+            String key = "member" + i;
+            counts[three.shardOf(key)]++;
+            if (three.shardOf(key) != four.shardOf(key)) {
+                moved++;
+            }
+        }
+
+        assertThat(counts).allMatch(count -> count > 2500);
+        assertThat(moved).isLessThan(4000); // 이상적으로 1/4
+    }
+
+    @Test
+    @DisplayName("저장한 샤드에서 조회, 여러 회원 조회는 샤드에 걸쳐 합친다")
+    void saveAndFind() throws SQLException {
+        List<Member> members = IntStream.range(0, 30)
+                .mapToObj(i -> new Member("member" + i, i * 1000))
+                .collect(Collectors.toList());
+
+        int[] saved = repository.saveAll(members);
+        assertThat(saved).hasSize(30).containsOnly(1);
+
+        Member member = repository.findById("member7");
+        assertThat(member.getMoney()).isEqualTo(7000);
+        int shard = repository.shardOf("member7");
+        assertThat(repository.getShard(shard).findOptionalById("member7")).isPresent();
+        assertThat(repository.getShard((shard + 1) % SHARD_COUNT).findOptionalById("member7")).isEmpty();
+
+        Map<String, Member> found = repository.findByIds(List.of("member1", "member2", "member29", "none"));
+        assertThat(found).containsOnlyKeys("member1", "member2", "member29");
+    }
+
+    @Test
+    @DisplayName("배치 결과는 입력 순서, 범위/페이지 조회는 전체 샤드를 합친 순서")
+    void batchAndScan() throws SQLException {
+        repository.saveAll(IntStream.range(0, 10)
+                .mapToObj(i -> new Member("member" + i, i * 1000))
+                .collect(Collectors.toList()));
+
+        Map<String, Integer> moneyByMemberId = new LinkedHashMap<>();
+        moneyByMemberId.put("member3", 3500);
+        moneyByMemberId.put("none", 0);
+        moneyByMemberId.put("member8", 8500);
+        assertThat(repository.updateAll(moneyByMemberId)).containsExactly(1, 0, 1);
+
+        try (Stream<Member> range = repository.findByMoneyRange(3000, 8500)) {
+            assertThat(range.map(Member::getMemberId))
+                    .containsExactly("member3", "member4", "member5", "member6", "member7", "member8");
+        }
+
+        List<Member> page = repository.findPageAfter("member3", 3);
+        assertThat(page).extracting(Member::getMemberId).containsExactly("member4", "member5", "member6");
+
+        //(3000, member2) 다음 - member3 은 3500 으로 바뀌었다.
+        List<Member> moneyPage = repository.findPageAfterMoney(3000, "member2", 3);
+        assertThat(moneyPage).extracting(Member::getMemberId).containsExactly("member3", "member4", "member5");
+    }
+
+    @Test
+    @DisplayName("전체 스트리밍 조회 - 샤드를 memberId 순서로 병합, 중간에 닫아도 된다")
+    void findAllMerged() throws SQLException {
+        List<Member> members = IntStream.range(0, 50)
+                .mapToObj(i -> new Member(String.format("member%02d", i), i))
+                .collect(Collectors.toList());
+        repository.saveAll(members);
+
+        try (Stream<Member> all = repository.findAll()) {
+            assertThat(all.map(Member::getMemberId))
+                    .containsExactlyElementsOf(members.stream().map(Member::getMemberId).collect(Collectors.toList()));
+        }
+
+        //일부만 읽고 닫기
+        try (Stream<Member> all = repository.findAll()) {
+            assertThat(all.limit(3).map(Member::getMemberId)).containsExactly("member00", "member01", "member02");
+        }
+    }
+
+    private static void execute(DataSource dataSource, String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package hello.jdbc.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccountLockManagerTest {
+
+    @Test
+    @DisplayName("반대 방향 잠금도 데드락 없이 끝난다")
+    void lockOrdering() throws Exception {
+        AccountLockManager lockManager = new AccountLockManager(16, 5, TimeUnit.SECONDS);
+        int[] counter = {0};
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            boolean forward = i % 2 == 0;
+            futures.add(executor.submit(() -> {
+                try (AccountLockManager.Locked locked =
+                             lockManager.lock(forward ? "member1" : "member2", forward ? "member2" : "member1")) {
+                    counter[0]++;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(counter[0]).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("제한 시간 안에 못 잡으면 예외")
+    void lockTimeout() throws Exception {
+        AccountLockManager lockManager = new AccountLockManager(16, 50, TimeUnit.MILLISECONDS);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> {
+            try (AccountLockManager.Locked l = lockManager.lock("member1")) {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        holder.start();
+        locked.await();
+
+        assertThatThrownBy(() -> lockManager.lock("member1", "member2"))
+                .isInstanceOf(CannotAcquireLockException.class);
+
+        release.countDown();
+        holder.join();
+
+        //풀린 뒤에는 다시 잡을 수 있다.
+        try (AccountLockManager.Locked l = lockManager.lock("member1", "member2")) {
+            assertThat(l).isNotNull();
+        }
+    }
+
+    @Test
+    @DisplayName("close 를 두 번 해도 한 번만 풀린다")
+    void closeTwice() throws Exception {
+        AccountLockManager lockManager = new AccountLockManager(16, 50, TimeUnit.MILLISECONDS);
+
+        AccountLockManager.Locked outer = lockManager.lock("member1");
+        AccountLockManager.Locked inner = lockManager.lock("member1"); // 재진입
+        inner.close();
+        inner.close();
+
+        //바깥 락은 아직 잡혀 있어야 한다.
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> other = executor.submit(() -> assertThatThrownBy(() -> lockManager.lock("member1"))
+                .isInstanceOf(CannotAcquireLockException.class));
+        other.get(5, TimeUnit.SECONDS);
+
+        outer.close();
+        outer.close(); // 이미 풀린 락을 또 풀면 IllegalMonitorStateException
+
+        Future<?> after = executor.submit(() -> lockManager.lock("member1").close());
+        after.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,196 @@
+package hello.jdbc.service;
+
+import hello.jdbc.connection.TestSchema;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.JournalCheckpointRepository;
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class BalanceWriteBehindBufferTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @TempDir
+    Path journalDir;
+
+    MemberRepositoryV3 memberRepository;
+    JournalCheckpointRepository checkpointRepository;
+    DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    void before() {
+        TestSchema.init();
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        memberRepository = new MemberRepositoryV3(dataSource);
+        checkpointRepository = new JournalCheckpointRepository(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    @AfterEach
+    void after() throws SQLException {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    @DisplayName("증감 합산 후 한번에 반영")
+    void netting() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        try (BalanceWriteBehindBuffer buffer = newBuffer(10)) {
+            buffer.add(MEMBER_A, 5);
+            buffer.add(MEMBER_A, -3);
+            buffer.add(MEMBER_A, 10);
+            buffer.add(MEMBER_B, 7);
+            buffer.add(MEMBER_B, -7);
+            assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+            buffer.flush();
+        }
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10012);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+        assertThat(Files.list(journalDir)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("버퍼가 가득 차면 flush 전까지 추가할 수 없다")
+    void backpressure() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+
+        try (BalanceWriteBehindBuffer buffer = newBuffer(2)) {
+            buffer.add(MEMBER_A, 1);
+            buffer.add(MEMBER_A, 1);
+
+            //when
+            assertThatThrownBy(() -> buffer.add(MEMBER_A, 1))
+                    .isInstanceOf(IllegalStateException.class);
+
+            buffer.flush();
+            buffer.add(MEMBER_A, 1);
+        }
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10003);
+    }
+
+    @Test
+    @DisplayName("재시작 시 남은 journal 반영 - 잘린 마지막 줄은 버린다")
+    void recover() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        long journalId = System.currentTimeMillis() * 1000 - 1;
+        Files.write(journalDir.resolve("journal-" + journalId + ".log"),
+                (MEMBER_A + "\t5\n" + MEMBER_A + "\t-3\n" + MEMBER_A + "\t10").getBytes(StandardCharsets.UTF_8));
+
+        //when
+        newBuffer(10).close();
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10002);
+        // 반영 후 journal 을 지웠으므로 checkpoint 도 정리된다.
+        assertThat(checkpointRepository.isApplied(journalId)).isFalse();
+    }
+
+    @Test
+    @DisplayName("이미 반영한 journal 은 건너뛰고 지운 journal 의 checkpoint 는 정리한다")
+    void pruneCheckpoints() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        long prunedId = System.currentTimeMillis() * 1000 - 2;
+        long journalId = prunedId + 1;
+        checkpointRepository.markApplied(prunedId);
+        // 반영 후 파일 삭제 전에 종료된 journal
+        checkpointRepository.markApplied(journalId);
+        Files.write(journalDir.resolve("journal-" + journalId + ".log"),
+                (MEMBER_A + "\t5\n").getBytes(StandardCharsets.UTF_8));
+
+        //when
+        newBuffer(10).close();
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(checkpointRepository.isApplied(prunedId)).isFalse();
+        assertThat(checkpointRepository.isApplied(journalId)).isFalse();
+        assertThat(Files.list(journalDir)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("int 범위를 넘는 배치는 dead letter 로 보내고 다음 배치는 반영한다")
+    void overflowDeadLetter() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+
+        try (BalanceWriteBehindBuffer buffer = newBuffer(10)) {
+            buffer.add(MEMBER_A, Integer.MAX_VALUE);
+            buffer.add(MEMBER_A, Integer.MAX_VALUE);
+
+            //when
+            buffer.flush();
+            buffer.add(MEMBER_A, 5);
+            buffer.flush();
+
+            //then
+            assertThat(buffer.getDeadLetterCount()).isEqualTo(1);
+        }
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10005);
+        try (Stream<Path> files = Files.list(journalDir)) {
+            assertThat(files.map(path -> path.getFileName().toString())).singleElement()
+                    .asString().startsWith("dead-journal-");
+        }
+    }
+
+    @Test
+    @DisplayName("없는 회원의 증감은 dead letter 로 남기고 나머지는 반영한다")
+    void missingMemberDeadLetter() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+
+        try (BalanceWriteBehindBuffer buffer = newBuffer(10)) {
+            buffer.add(MEMBER_A, 5);
+            buffer.add(MEMBER_B, 7);
+
+            //when
+            buffer.flush();
+
+            //then
+            assertThat(buffer.getDeadLetterCount()).isEqualTo(1);
+        }
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10005);
+        try (Stream<Path> files = Files.list(journalDir)) {
+            Path deadLetter = files.filter(path -> path.getFileName().toString().startsWith("dead-missing-"))
+                    .findFirst().orElseThrow();
+            assertThat(Files.readAllLines(deadLetter)).containsExactly(MEMBER_B + "\t7");
+        }
+    }
+
+    private BalanceWriteBehindBuffer newBuffer(int maxPending) {
+        // 자동 flush 가 끼어들지 않도록 주기와 크기를 크게
+        return new BalanceWriteBehindBuffer(transactionManager, memberRepository, checkpointRepository,
+                journalDir, 60_000, Integer.MAX_VALUE, maxPending, 100);
+    }
+}
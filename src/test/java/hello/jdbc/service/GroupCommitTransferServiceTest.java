@@ -0,0 +1,148 @@
+package hello.jdbc.service;
+
+import hello.jdbc.connection.TestSchema;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 트랜잭션 - 그룹 커밋
+ */
+
+class GroupCommitTransferServiceTest {
+
+    public static final String MEMBER1 = "member1";
+    public static final String MEMBER2 = "member2";
+    public static final String MEMBER_EX = "ex";
+
+    private DriverManagerDataSource dataSource;
+    private MemberRepositoryV3 memberRepository;
+    private GroupCommitTransferService memberService;
+
+    @BeforeEach
+    void before() {
+        TestSchema.init();
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        memberRepository = new MemberRepositoryV3(dataSource);
+
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        memberService = new GroupCommitTransferService(transactionManager, memberRepository, 16, 20, 1000);
+    }
+
+    @AfterEach
+    void after() throws SQLException, InterruptedException {
+        memberService.close();
+        memberRepository.delete(MEMBER1);
+        memberRepository.delete(MEMBER2);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("커밋 응답을 잃어버리면 다시 실행하지 않고 결과 불명으로 실패 - 두 번 이체하지 않는다")
+    void commitOutcomeUnknown() throws Exception {
+        //given - 커밋은 되었지만 응답이 실패한 상황
+        memberRepository.save(new Member(MEMBER1, 10000));
+        memberRepository.save(new Member(MEMBER2, 10000));
+        DataSourceTransactionManager lostAck = new DataSourceTransactionManager(dataSource) {
+            @Override
+            protected void doCommit(DefaultTransactionStatus status) {
+                super.doCommit(status);
+                throw new TransactionSystemException("commit ack lost");
+            }
+        };
+
+        //when
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try (GroupCommitTransferService service = new GroupCommitTransferService(lostAck, memberRepository, 16, 50, 100)) {
+            for (int i = 0; i < 5; i++) {
+                futures.add(service.accountTransfer(MEMBER1, MEMBER2, 100));
+            }
+            for (CompletableFuture<Void> future : futures) {
+                assertThatThrownBy(future::join)
+                        .isInstanceOf(CompletionException.class)
+                        .hasMessageContaining("commit outcome unknown");
+            }
+        }
+
+        //then - 한 번씩만 반영
+        assertThat(memberRepository.findById(MEMBER1).getMoney()).isEqualTo(9500);
+        assertThat(memberRepository.findById(MEMBER2).getMoney()).isEqualTo(10500);
+    }
+
+    @Test
+    @DisplayName("여러 이체를 묶어서 커밋, 실패한 이체만 실패")
+    void accountTransfer() throws SQLException {
+
+        //given
+        memberRepository.save(new Member(MEMBER1, 10000));
+        memberRepository.save(new Member(MEMBER2, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(memberService.accountTransfer(MEMBER1, MEMBER2, 100));
+        }
+        CompletableFuture<Void> failed = memberService.accountTransfer(MEMBER1, MEMBER_EX, 100);
+
+        //then
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        assertThatThrownBy(failed::join).isInstanceOf(CompletionException.class);
+
+        assertThat(memberRepository.findById(MEMBER1).getMoney()).isEqualTo(9000);
+        assertThat(memberRepository.findById(MEMBER2).getMoney()).isEqualTo(11000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("close 와 동시에 들어온 요청도 future 가 모두 완료된다")
+    void closeWhileSubmitting() throws Exception {
+
+        //given
+        memberRepository.save(new Member(MEMBER1, 100000));
+        memberRepository.save(new Member(MEMBER2, 100000));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread submitter = new Thread(() -> {
+            started.countDown();
+            for (int i = 0; i < 500; i++) {
+                CompletableFuture<Void> future = memberService.accountTransfer(MEMBER1, MEMBER2, 1);
+                synchronized (futures) {
+                    futures.add(future);
+                }
+            }
+        });
+
+        //when
+        submitter.start();
+        started.await();
+        memberService.close();
+        submitter.join();
+
+        //then
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        assertThat(all.handle((result, e) -> null)).succeedsWithin(5, TimeUnit.SECONDS); // 성공이든 실패든 완료
+        assertThat(futures).allMatch(CompletableFuture::isDone);
+    }
+}
@@ -0,0 +1,77 @@
+package hello.jdbc.service;
+
+import hello.jdbc.connection.TestSchema;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 스트라이프 락 + 트랜잭션 템플릿 이체
+ * accountTransfer 는 조회 후 수정이라 락이 없으면 동시 이체에서 갱신이 사라진다.
+ */
+class LockingMemberServiceV3_2Test {
+
+    public static final String MEMBER1 = "member1";
+    public static final String MEMBER2 = "member2";
+
+    private MemberRepositoryV3 memberRepository;
+    private LockingMemberServiceV3_2 memberService;
+
+    @BeforeEach
+    void before() {
+        TestSchema.init();
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        memberRepository = new MemberRepositoryV3(dataSource);
+        MemberServiceV3_2 target = new MemberServiceV3_2(new DataSourceTransactionManager(dataSource), memberRepository);
+        memberService = new LockingMemberServiceV3_2(new AccountLockManager(16, 10, TimeUnit.SECONDS), target);
+    }
+
+    @AfterEach
+    void after() throws SQLException {
+        memberRepository.delete(MEMBER1);
+        memberRepository.delete(MEMBER2);
+    }
+
+    @Test
+    @DisplayName("같은 계좌 동시 이체 - 갱신이 사라지지 않는다")
+    void concurrentTransfer() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER1, 100000));
+        memberRepository.save(new Member(MEMBER2, 100000));
+
+        //when - 1->2 100번, 2->1 50번 (양방향도 데드락 없이)
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            boolean forward = i % 3 != 0;
+            futures.add(executor.submit(() -> {
+                memberService.accountTransfer(forward ? MEMBER1 : MEMBER2, forward ? MEMBER2 : MEMBER1, 10);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        //then
+        assertThat(memberRepository.findById(MEMBER1).getMoney()).isEqualTo(100000 - 100 * 10 + 50 * 10);
+        assertThat(memberRepository.findById(MEMBER2).getMoney()).isEqualTo(100000 + 100 * 10 - 50 * 10);
+    }
+}
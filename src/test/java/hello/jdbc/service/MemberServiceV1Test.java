@@ -2,6 +2,7 @@ package hello.jdbc.service;
 
 import hello.jdbc.connection.ConnectionConst;
 import hello.jdbc.domain.Member;
+import hello.jdbc.metrics.SimpleMetricsRegistry;
 import hello.jdbc.repository.MemberRepositoryV1;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
@@ -28,12 +29,14 @@ class MemberServiceV1Test {
 
     private MemberRepositoryV1 memberRepository;
     private MemberServiceV1 memberService;
+    private SimpleMetricsRegistry registry;
 
     @BeforeEach
     void before() {
         DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
         memberRepository = new MemberRepositoryV1(dataSource);
-        memberService = new MemberServiceV1(memberRepository);
+        registry = new SimpleMetricsRegistry();
+        memberService = new MemberServiceV1(memberRepository, registry);
     }
 
     @AfterEach
@@ -83,6 +86,8 @@ class MemberServiceV1Test {
 
         assertThat(findMember1.getMoney()).isEqualTo(8000);
         assertThat(findMember2.getMoney()).isEqualTo(10000);
+        assertThat(registry.timer("service.v1.accountTransfer").getCount()).isEqualTo(1);
+        assertThat(registry.counter("service.v1.accountTransfer.failure").getCount()).isEqualTo(1);
 
     }
 }
\ No newline at end of file
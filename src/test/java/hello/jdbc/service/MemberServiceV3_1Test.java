@@ -1,6 +1,8 @@
 package hello.jdbc.service;
 
+import hello.jdbc.connection.TestSchema;
 import hello.jdbc.domain.Member;
+import hello.jdbc.metrics.SimpleMetricsRegistry;
 import hello.jdbc.repository.MemberRepositoryV2;
 import hello.jdbc.repository.MemberRepositoryV3;
 import org.junit.jupiter.api.AfterEach;
@@ -12,6 +14,7 @@ import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.sql.SQLException;
+import java.util.List;
 
 import static hello.jdbc.connection.ConnectionConst.*;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -29,15 +32,18 @@ class MemberServiceV3_1Test {
 
     private MemberRepositoryV3 memberRepository;
     private MemberServiceV3_1 memberService;
+    private SimpleMetricsRegistry registry;
 
     @BeforeEach
     void before() {
+        TestSchema.init();
         DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
         memberRepository = new MemberRepositoryV3(dataSource);
 
         PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
 
-        memberService = new MemberServiceV3_1(transactionManager,memberRepository);
+        registry = new SimpleMetricsRegistry();
+        memberService = new MemberServiceV3_1(transactionManager, memberRepository, registry);
     }
 
     @AfterEach
@@ -89,4 +95,31 @@ class MemberServiceV3_1Test {
         assertThat(findMember2.getMoney()).isEqualTo(10000);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("배치 이체 - 실패한 이체만 savepoint 로 롤백")
+    void accountTransferBatch() throws SQLException {
+
+        //given
+        memberRepository.save(new Member(MEMBER1, 10000));
+        memberRepository.save(new Member(MEMBER2, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        List<TransferResult> results = memberService.accountTransferBatch(List.of(
+                new Transfer(MEMBER1, MEMBER2, 2000),
+                new Transfer(MEMBER1, MEMBER_EX, 2000),
+                new Transfer(MEMBER2, MEMBER1, 1000)));
+
+        //then
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, false, true);
+        assertThat(results.get(1).getException()).isInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(MEMBER1).getMoney()).isEqualTo(9000);
+        assertThat(memberRepository.findById(MEMBER2).getMoney()).isEqualTo(11000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+        // 실패한 이체 건수와 배치 실패는 따로 센다.
+        assertThat(registry.counter("service.v3_1.accountTransferBatch.itemFailure").getCount()).isEqualTo(1);
+        assertThat(registry.counter("service.v3_1.accountTransferBatch.failure").getCount()).isZero();
+    }
+}
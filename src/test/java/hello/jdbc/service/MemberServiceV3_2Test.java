@@ -1,6 +1,8 @@
 package hello.jdbc.service;
 
+import hello.jdbc.connection.TestSchema;
 import hello.jdbc.domain.Member;
+import hello.jdbc.metrics.SimpleMetricsRegistry;
 import hello.jdbc.repository.MemberRepositoryV3;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,6 +13,11 @@ import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static hello.jdbc.connection.ConnectionConst.*;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -28,15 +35,18 @@ class MemberServiceV3_2Test {
 
     private MemberRepositoryV3 memberRepository;
     private MemberServiceV3_2 memberService;
+    private SimpleMetricsRegistry registry;
 
     @BeforeEach
     void before() {
+        TestSchema.init();
         DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
         memberRepository = new MemberRepositoryV3(dataSource);
 
         PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
 
-        memberService = new MemberServiceV3_2(transactionManager,memberRepository);
+        registry = new SimpleMetricsRegistry();
+        memberService = new MemberServiceV3_2(transactionManager, memberRepository, registry);
     }
 
     @AfterEach
@@ -88,4 +98,68 @@ class MemberServiceV3_2Test {
         assertThat(findMember2.getMoney()).isEqualTo(10000);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("비관적 락 이체 - 동시 양방향 이체에도 잔액 합계 유지")
+    void accountTransferPessimisticConcurrent() throws Exception {
+
+        //given
+        memberRepository.save(new Member(MEMBER1, 100000));
+        memberRepository.save(new Member(MEMBER2, 100000));
+
+        //when - 절반은 1->2, 절반은 2->1
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            boolean forward = i % 2 == 0;
+            int money = (i % 7) + 1;
+            futures.add(executor.submit(() -> {
+                memberService.accountTransferPessimistic(
+                        forward ? MEMBER1 : MEMBER2, forward ? MEMBER2 : MEMBER1, money);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //then
+        int money1 = memberRepository.findById(MEMBER1).getMoney();
+        int money2 = memberRepository.findById(MEMBER2).getMoney();
+        assertThat(money1 + money2).isEqualTo(200000);
+    }
+
+    @Test
+    @DisplayName("낙관적 락 이체 - version 충돌은 재시도, 잔액 합계 유지")
+    void accountTransferOptimisticConcurrent() throws Exception {
+
+        //given
+        memberRepository.save(new Member(MEMBER1, 100000));
+        memberRepository.save(new Member(MEMBER2, 100000));
+
+        //when
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            boolean forward = i % 2 == 0;
+            futures.add(executor.submit(() -> {
+                memberService.accountTransferOptimistic(
+                        forward ? MEMBER1 : MEMBER2, forward ? MEMBER2 : MEMBER1, 10);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //then
+        Member findMember1 = memberRepository.findById(MEMBER1);
+        Member findMember2 = memberRepository.findById(MEMBER2);
+        assertThat(findMember1.getMoney() + findMember2.getMoney()).isEqualTo(200000);
+        assertThat(findMember1.getVersion()).isGreaterThanOrEqualTo(100);
+        assertThat(registry.counter("service.v3_2.accountTransferOptimistic.retry").getCount())
+                .isGreaterThanOrEqualTo(registry.counter("service.v3_2.accountTransferOptimistic.conflict").getCount());
+    }
+}
@@ -0,0 +1,160 @@
+package hello.jdbc.service;
+
+import hello.jdbc.connection.TestSchema;
+import hello.jdbc.domain.LedgerEntry;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 트랜잭션 - 상대값 이체
+ */
+
+class MemberServiceV3_3Test {
+
+    public static final String MEMBER1 = "member1";
+    public static final String MEMBER2 = "member2";
+    public static final String MEMBER_EX = "ex";
+
+    @TempDir
+    Path ledgerDir;
+
+    private DriverManagerDataSource dataSource;
+    private MemberRepositoryV3 memberRepository;
+    private MemberServiceV3_3 memberService;
+
+    @BeforeEach
+    void before() {
+        TestSchema.init();
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        memberRepository = new MemberRepositoryV3(dataSource);
+
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        memberService = new MemberServiceV3_3(transactionManager,memberRepository);
+    }
+
+    @AfterEach
+    void after() throws SQLException {
+        memberRepository.delete(MEMBER1);
+        memberRepository.delete(MEMBER2);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("정상 이체")
+    void accountTransfer() throws SQLException {
+
+        //given
+        Member member1 = new Member(MEMBER1, 10000);
+        Member member2 = new Member(MEMBER2, 10000);
+        memberRepository.save(member1);
+        memberRepository.save(member2);
+        //when
+
+        memberService.accountTransfer(member1.getMemberId(), member2.getMemberId(), 2000);
+        //then
+        Member findMember1 = memberRepository.findById(member1.getMemberId());
+        Member findMember2 = memberRepository.findById(member2.getMemberId());
+
+        assertThat(findMember1.getMoney()).isEqualTo(8000);
+        assertThat(findMember2.getMoney()).isEqualTo(12000);
+
+    }
+
+    @Test
+    @DisplayName("예외 발생 이체")
+    void accountTransferEx() throws SQLException {
+
+        //given
+        Member member1 = new Member(MEMBER1, 10000);
+        Member memberEx = new Member(MEMBER_EX, 10000);
+        memberRepository.save(member1);
+        memberRepository.save(memberEx);
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(member1.getMemberId(), memberEx.getMemberId(), 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        Member findMember1 = memberRepository.findById(member1.getMemberId());
+        Member findMember2 = memberRepository.findById(memberEx.getMemberId());
+
+        assertThat(findMember1.getMoney()).isEqualTo(10000);
+        assertThat(findMember2.getMoney()).isEqualTo(10000);
+
+    }
+
+    @Test
+    @DisplayName("잔액 부족 이체")
+    void accountTransferInsufficientMoney() throws SQLException {
+
+        //given
+        Member member1 = new Member(MEMBER1, 1000);
+        Member member2 = new Member(MEMBER2, 10000);
+        memberRepository.save(member1);
+        memberRepository.save(member2);
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(member1.getMemberId(), member2.getMemberId(), 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(memberRepository.findById(member1.getMemberId()).getMoney()).isEqualTo(1000);
+        assertThat(memberRepository.findById(member2.getMemberId()).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("원장 기록 - 커밋이 롤백된 이체는 원래 txId 를 가리키는 VOID 레코드로 무효 처리한다")
+    void ledger() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER1, 10000));
+        memberRepository.save(new Member(MEMBER2, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+        DataSourceTransactionManager failingCommit = new DataSourceTransactionManager(dataSource) {
+            @Override
+            protected void doCommit(DefaultTransactionStatus status) {
+                throw new TransactionSystemException("commit failed");
+            }
+        };
+        failingCommit.setRollbackOnCommitFailure(true);
+
+        try (TransferLedger ledger = new TransferLedger(ledgerDir)) {
+            MemberServiceV3_3 service = new MemberServiceV3_3(new DataSourceTransactionManager(dataSource),
+                    memberRepository, ledger);
+            MemberServiceV3_3 failingService = new MemberServiceV3_3(failingCommit, memberRepository, ledger);
+
+            //when
+            service.accountTransfer(MEMBER1, MEMBER2, 2000);
+            assertThatThrownBy(() -> service.accountTransfer(MEMBER1, MEMBER_EX, 1000))
+                    .isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(() -> failingService.accountTransfer(MEMBER1, MEMBER2, 500))
+                    .isInstanceOf(TransactionSystemException.class);
+        }
+
+        //then - 정상 이체 1건, 롤백된 이체와 VOID 레코드 1건씩, 예외 이체는 기록 안 함
+        try (Stream<LedgerEntry> entries = new LedgerReader(ledgerDir).readAll()) {
+            assertThat(entries.map(entry -> entry.getType() + ":" + entry.getVoidedTxId() + ":"
+                    + entry.getFromId() + "->" + entry.getToId() + ":" + entry.getMoney()))
+                    .containsExactly("TRANSFER:0:member1->member2:2000", "TRANSFER:0:member1->member2:500",
+                            "VOID:2:member1->member2:500");
+        }
+        assertThat(memberRepository.findById(MEMBER1).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER2).getMoney()).isEqualTo(12000);
+    }
+}
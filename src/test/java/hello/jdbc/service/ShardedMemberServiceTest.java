@@ -0,0 +1,170 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.ShardTransfer;
+import hello.jdbc.repository.ShardTransferRepository;
+import hello.jdbc.repository.ShardedMemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 내장 H2 두 개를 샤드로 사용
+ */
+@Slf4j
+class ShardedMemberServiceTest {
+
+    List<DataSource> dataSources = new ArrayList<>();
+    ShardedMemberRepository memberRepository;
+    ShardedMemberService memberService;
+
+    String memberA;
+    String sameShardMember;
+    String otherShardMember;
+
+    @BeforeEach
+    void before() throws SQLException {
+        for (int i = 0; i < 2; i++) {
+            DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:transfer_shard" + i + ";DB_CLOSE_DELAY=-1", "sa", "");
+            execute(dataSource, "create table member (member_id varchar(10), money integer not null default 0, " +
+                    "version bigint not null default 0, primary key (member_id))");
+            execute(dataSource, "create table shard_transfer (transfer_id varchar(36) primary key, " +
+                    "from_id varchar(10) not null, to_id varchar(10) not null, money integer not null, " +
+                    "status varchar(10) not null)");
+            dataSources.add(dataSource);
+        }
+        memberRepository = new ShardedMemberRepository(dataSources);
+        memberService = new ShardedMemberService(memberRepository);
+
+        // 같은 샤드 / 다른 샤드에 있는 회원 고르기
+        memberA = "memberA";
+        int shardA = memberRepository.shardOf(memberA);
+        for (int i = 0; sameShardMember == null || otherShardMember == null; i++) {
+            String memberId = "member" + i;
+            if (memberRepository.shardOf(memberId) == shardA) {
+                sameShardMember = sameShardMember == null ? memberId : sameShardMember;
+            } else {
+                otherShardMember = otherShardMember == null ? memberId : otherShardMember;
+            }
+        }
+        memberRepository.saveAll(List.of(
+                new Member(memberA, 10000),
+                new Member(sameShardMember, 10000),
+                new Member(otherShardMember, 10000)));
+    }
+
+    @AfterEach
+    void after() throws SQLException {
+        memberRepository.close();
+        for (DataSource dataSource : dataSources) {
+            execute(dataSource, "drop table member");
+            execute(dataSource, "drop table shard_transfer");
+        }
+    }
+
+    @Test
+    @DisplayName("같은 샤드 이체")
+    void sameShardTransfer() throws SQLException {
+        //when
+        memberService.accountTransfer(memberA, sameShardMember, 2000);
+
+        //then
+        assertThat(memberRepository.findById(memberA).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(sameShardMember).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("다른 샤드 이체 - 양쪽 샤드에 이체 기록이 남는다")
+    void crossShardTransfer() throws SQLException {
+        //when
+        memberService.accountTransfer(memberA, otherShardMember, 2000);
+
+        //then
+        assertThat(memberRepository.findById(memberA).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(otherShardMember).getMoney()).isEqualTo(12000);
+        List<ShardTransfer> done = transfers(memberA).findByStatus(ShardedMemberService.DONE);
+        assertThat(done).hasSize(1);
+        assertThat(transfers(otherShardMember).findById(done.get(0).getTransferId())).isPresent();
+    }
+
+    @Test
+    @DisplayName("다른 샤드 이체 - 입금 실패 시 출금 보상")
+    void crossShardTransferCompensate() throws SQLException {
+        //when - 입금 샤드에 없는 회원
+        String missing = otherShardMember + "x";
+        while (memberRepository.shardOf(missing) == memberRepository.shardOf(memberA)) {
+            missing = missing + "x";
+        }
+        String toId = missing;
+        assertThatThrownBy(() -> memberService.accountTransfer(memberA, toId, 2000))
+                .isInstanceOf(NoSuchElementException.class);
+
+        //then
+        assertThat(memberRepository.findById(memberA).getMoney()).isEqualTo(10000);
+        assertThat(transfers(memberA).findByStatus(ShardedMemberService.CANCELLED)).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("출금 후 종료된 이체 마무리 - 입금 기록이 없으면 되돌린다")
+    void recover() throws SQLException {
+        //given - 1 단계만 끝난 상태
+        memberRepository.withdraw(memberA, 2000);
+        transfers(memberA).save(new ShardTransfer("t1", memberA, otherShardMember, 2000, ShardedMemberService.PENDING));
+
+        //when
+        int recovered = memberService.recover();
+
+        //then
+        assertThat(recovered).isEqualTo(1);
+        assertThat(memberRepository.findById(memberA).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(otherShardMember).getMoney()).isEqualTo(10000);
+        //입금 샤드에 펜스가 남아 뒤늦은 입금을 막는다.
+        assertThat(transfers(otherShardMember).findById("t1")).get()
+                .extracting(ShardTransfer::getStatus).isEqualTo(ShardedMemberService.CANCELLED);
+    }
+
+    @Test
+    @DisplayName("출금 후 종료된 이체 마무리 - 입금 기록이 있으면 DONE")
+    void recoverReceived() throws SQLException {
+        //given - 1, 2 단계만 끝난 상태
+        memberRepository.withdraw(memberA, 2000);
+        transfers(memberA).save(new ShardTransfer("t2", memberA, otherShardMember, 2000, ShardedMemberService.PENDING));
+        memberRepository.deposit(otherShardMember, 2000);
+        transfers(otherShardMember).save(new ShardTransfer("t2", memberA, otherShardMember, 2000, ShardedMemberService.RECEIVED));
+
+        //when
+        int recovered = memberService.recover();
+
+        //then
+        assertThat(recovered).isEqualTo(1);
+        assertThat(transfers(memberA).findById("t2")).get()
+                .extracting(ShardTransfer::getStatus).isEqualTo(ShardedMemberService.DONE);
+        assertThat(memberRepository.findById(memberA).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(otherShardMember).getMoney()).isEqualTo(12000);
+    }
+
+    private ShardTransferRepository transfers(String memberId) {
+        return new ShardTransferRepository(memberRepository.getDataSource(memberRepository.shardOf(memberId)));
+    }
+
+    private static void execute(DataSource dataSource, String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package hello.jdbc.service;
+
+import hello.jdbc.connection.TestSchema;
+import hello.jdbc.domain.LedgerEntry;
+import hello.jdbc.repository.LedgerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class TransferLedgerTest {
+
+    // 레코드 몇 개면 다음 세그먼트로 넘어가는 크기
+    private static final int SMALL_SEGMENT_SIZE = 128;
+
+    @TempDir
+    Path ledgerDir;
+
+    @Test
+    @DisplayName("동시 기록 - txId 가 빠짐없이 발급되고 세그먼트를 넘어가도 순서대로 읽힌다")
+    void appendAndRead() throws Exception {
+        //given
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (TransferLedger ledger = new TransferLedger(ledgerDir, SMALL_SEGMENT_SIZE, 1)) {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(() -> ledger.append("memberA", "memberB", 1)));
+            }
+            for (Future<Long> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        //then
+        try (Stream<LedgerEntry> entries = new LedgerReader(ledgerDir).readAll()) {
+            List<Long> txIds = entries.map(LedgerEntry::getTxId).collect(Collectors.toList());
+            assertThat(txIds).hasSize(100);
+            assertThat(txIds).isSorted();
+            assertThat(txIds.get(99)).isEqualTo(100);
+        }
+        try (Stream<LedgerEntry> entries = new LedgerReader(ledgerDir).readAfter(90)) {
+            assertThat(entries.map(LedgerEntry::getTxId)).containsExactly(91L, 92L, 93L, 94L, 95L, 96L, 97L, 98L, 99L, 100L);
+        }
+    }
+
+    @Test
+    @DisplayName("다시 열면 잘린 레코드를 버리고 이어서 기록한다")
+    void reopenAfterTornWrite() throws Exception {
+        //given
+        try (TransferLedger ledger = new TransferLedger(ledgerDir)) {
+            ledger.append("memberA", "memberB", 1000);
+            ledger.append("memberA", "memberB", 2000);
+        }
+        // 세 번째 레코드를 쓰다가 죽은 상황 - length 만 남고 내용이 없다
+        Path segment = LedgerSegment.list(ledgerDir).get(0);
+        long tornPosition;
+        try (Stream<LedgerEntry> entries = new LedgerReader(ledgerDir).readAll()) {
+            tornPosition = entries.count() * LedgerSegment.encodedSize("memberA".getBytes(), "memberB".getBytes());
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 30), tornPosition);
+        }
+
+        //when
+        try (TransferLedger ledger = new TransferLedger(ledgerDir)) {
+            long txId = ledger.append("memberA", "memberB", 3000);
+
+            //then
+            assertThat(txId).isEqualTo(3);
+        }
+        try (Stream<LedgerEntry> entries = new LedgerReader(ledgerDir).readAll()) {
+            assertThat(entries.map(LedgerEntry::getMoney)).containsExactly(1000, 2000, 3000);
+        }
+    }
+
+    @Test
+    @DisplayName("원장 적재 - 적재한 세그먼트는 지우고 다시 실행하면 이어서 적재한다")
+    void compact() throws Exception {
+        //given
+        TestSchema.init();
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        LedgerRepository ledgerRepository = new LedgerRepository(dataSource);
+        ledgerRepository.deleteAll();
+
+        try (TransferLedger ledger = new TransferLedger(ledgerDir, SMALL_SEGMENT_SIZE, 0)) {
+            LedgerCompactor compactor = new LedgerCompactor(new DataSourceTransactionManager(dataSource),
+                    ledgerRepository, ledger, 3);
+            for (int i = 0; i < 10; i++) {
+                ledger.append("memberA", "memberB", i);
+            }
+
+            //when
+            assertThat(compactor.compact()).isEqualTo(10);
+            ledger.append("memberA", "memberB", 10);
+            assertThat(compactor.compact()).isEqualTo(1);
+        }
+
+        //then
+        assertThat(ledgerRepository.findLastTxId()).isEqualTo(11);
+        assertThat(LedgerSegment.list(ledgerDir)).hasSize(1);
+        ledgerRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("기록 중인 원장은 fsync 된 레코드까지만 읽는다")
+    void readDurableOnly() throws Exception {
+        //given - fsync 전에 300ms 모은다
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (TransferLedger ledger = new TransferLedger(ledgerDir, SMALL_SEGMENT_SIZE, 300)) {
+            ledger.append("memberA", "memberB", 1);
+
+            //when - 두 번째 레코드는 기록됐지만 아직 fsync 전
+            Future<Long> pending = executor.submit(() -> ledger.append("memberA", "memberB", 2));
+            while (ledger.getLastTxId() < 2) {
+                Thread.sleep(1);
+            }
+
+            //then
+            try (Stream<LedgerEntry> entries = new LedgerReader(ledger).readAll()) {
+                assertThat(entries.map(LedgerEntry::getTxId)).containsExactly(1L);
+            }
+            assertThat(pending.get()).isEqualTo(2);
+            try (Stream<LedgerEntry> entries = new LedgerReader(ledger).readAll()) {
+                assertThat(entries.map(LedgerEntry::getTxId)).containsExactly(1L, 2L);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}